@@ -0,0 +1,94 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import jsaf.io.ChunkedBuffer;
+import jsaf.io.LineIterator;
+import jsaf.io.Streams;
+
+/**
+ * Measures the bytes allocated per command to collect a command's output and scan its lines, comparing the fully-buffered
+ * path used by ExecData (ByteArrayOutputStream, byte array copy, LineIterator, List of Strings) to the ChunkedBuffer path
+ * used by ChunkedExecData (lines are scanned in place).
+ *
+ * Usage: java ExecDataBenchmark [lines-per-command] [commands]
+ */
+public class ExecDataBenchmark {
+    public static void main(String[] argv) throws Exception {
+	int lines = argv.length > 0 ? Integer.parseInt(argv[0]) : 10000;
+	int commands = argv.length > 1 ? Integer.parseInt(argv[1]) : 200;
+	byte[] output = synthesize(lines);
+
+	for (int i=0; i < 2; i++) { // the first pass warms up
+	    long buffered = measure(new Buffered(), output, commands);
+	    long chunked = measure(new Chunked(), output, commands);
+	    if (i > 0) {
+		System.out.println(String.format("output size: %d bytes, %d lines", output.length, lines));
+		System.out.println(String.format("buffered (ExecData):        %12d bytes allocated/command", buffered));
+		System.out.println(String.format("chunked (ChunkedExecData):  %12d bytes allocated/command", chunked));
+		System.out.println(String.format("reduction: %.1fx", (double)buffered / (double)chunked));
+	    }
+	}
+	System.exit(0);
+    }
+
+    interface Path {
+	int run(InputStream in) throws IOException;
+    }
+
+    static class Buffered implements Path {
+	public int run(InputStream in) throws IOException {
+	    ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    Streams.copy(in, out, true);
+	    byte[] data = out.toByteArray();
+	    List<String> result = new ArrayList<String>();
+	    Iterator<String> iter = new LineIterator(new ByteArrayInputStream(data));
+	    while (iter.hasNext()) {
+		result.add(iter.next());
+	    }
+	    return result.size();
+	}
+    }
+
+    static class Chunked implements Path {
+	public int run(InputStream in) throws IOException {
+	    ChunkedBuffer out = new ChunkedBuffer();
+	    Streams.copy(in, out, true);
+	    int count = 0;
+	    Iterator<CharSequence> iter = out.lines();
+	    while (iter.hasNext()) {
+		if (iter.next().length() >= 0) {
+		    count++;
+		}
+	    }
+	    return count;
+	}
+    }
+
+    static long measure(Path path, byte[] output, int commands) throws IOException {
+	com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+	long tid = Thread.currentThread().getId();
+	long before = mx.getThreadAllocatedBytes(tid);
+	for (int i=0; i < commands; i++) {
+	    path.run(new ByteArrayInputStream(output));
+	}
+	return (mx.getThreadAllocatedBytes(tid) - before) / commands;
+    }
+
+    static byte[] synthesize(int lines) {
+	StringBuffer sb = new StringBuffer();
+	for (int i=0; i < lines; i++) {
+	    sb.append("drwxr-xr-x  2 root root 4096 Jan  1 00:00 /usr/lib/package-").append(i).append('\n');
+	}
+	return sb.toString().getBytes();
+    }
+}
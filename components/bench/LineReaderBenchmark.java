@@ -0,0 +1,192 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import jsaf.io.LineBuffer;
+import jsaf.io.PerishableReader;
+import jsaf.io.SimpleReader;
+import jsaf.io.Streams;
+import jsaf.util.Strings;
+
+/**
+ * Measures the bytes allocated per line by the line-reading methods of SimpleReader, Streams and PerishableReader, and by
+ * the LineBuffer callback and CharSequence APIs. The baselines reproduce the implementations that preceded LineBuffer (a
+ * boxed ArrayList of Bytes per line in SimpleReader, and a ByteArrayOutputStream per line in Streams).
+ *
+ * Usage: java LineReaderBenchmark [lines]
+ */
+public class LineReaderBenchmark {
+    static final Charset CHARSET = Strings.UTF8;
+
+    public static void main(String[] argv) throws Exception {
+	int lines = argv.length > 0 ? Integer.parseInt(argv[0]) : 200000;
+	byte[] data = synthesize(lines);
+	Case[] cases = {new SimpleBaseline(), new SimpleString(), new StreamsBaseline(), new StreamsString(),
+			new PerishableString(), new PerishableBuffer(), new ForEachLine()};
+	for (int pass=0; pass < 2; pass++) { // the first pass warms up
+	    for (Case c : cases) {
+		long bytes = measure(c, data);
+		if (pass > 0) {
+		    System.out.println(String.format("%-44s %8.1f bytes/line", c.toString(), (double)bytes / lines));
+		}
+	    }
+	}
+	System.exit(0);
+    }
+
+    static abstract class Case {
+	abstract long run(InputStream in) throws IOException;
+    }
+
+    static class SimpleBaseline extends Case {
+	long run(InputStream in) throws IOException {
+	    long count = 0;
+	    while (true) {
+		ArrayList<Byte> list = new ArrayList<Byte>();
+		int c;
+		while ((c = in.read()) != '\n' && c != -1) {
+		    list.add(new Byte((byte)(0xFF & c)));
+		}
+		if (c == -1 && list.size() == 0) {
+		    return count;
+		}
+		byte[] buff = new byte[list.size()];
+		for (int i=0; i < buff.length; i++) {
+		    buff[i] = list.get(i).byteValue();
+		}
+		if (new String(buff, CHARSET).length() >= 0) {
+		    count++;
+		}
+	    }
+	}
+
+	public String toString() {
+	    return "SimpleReader.readLine (ArrayList<Byte>)";
+	}
+    }
+
+    static class SimpleString extends Case {
+	long run(InputStream in) throws IOException {
+	    SimpleReader reader = new SimpleReader(in);
+	    long count = 0;
+	    while (reader.readLine(CHARSET) != null) {
+		count++;
+	    }
+	    return count;
+	}
+
+	public String toString() {
+	    return "SimpleReader.readLine (LineBuffer)";
+	}
+    }
+
+    static class StreamsBaseline extends Case {
+	long run(InputStream in) throws IOException {
+	    long count = 0;
+	    while (true) {
+		ByteArrayOutputStream buff = new ByteArrayOutputStream();
+		int ch;
+		while ((ch = in.read()) != '\n') {
+		    if (ch == -1) {
+			return count;
+		    }
+		    buff.write(ch);
+		}
+		if (new String(buff.toByteArray(), CHARSET).length() >= 0) {
+		    count++;
+		}
+	    }
+	}
+
+	public String toString() {
+	    return "Streams.readLine (ByteArrayOutputStream)";
+	}
+    }
+
+    static class StreamsString extends Case {
+	long run(InputStream in) throws IOException {
+	    long count = 0;
+	    try {
+		while (true) {
+		    Streams.readLine(in, CHARSET);
+		    count++;
+		}
+	    } catch (EOFException e) {
+	    }
+	    return count;
+	}
+
+	public String toString() {
+	    return "Streams.readLine (LineBuffer)";
+	}
+    }
+
+    static class PerishableString extends Case {
+	long run(InputStream in) throws IOException {
+	    PerishableReader reader = PerishableReader.newInstance(in, 60000L);
+	    long count = 0;
+	    while (reader.readLine(CHARSET) != null) {
+		count++;
+	    }
+	    return count;
+	}
+
+	public String toString() {
+	    return "PerishableReader.readLine(Charset)";
+	}
+    }
+
+    static class PerishableBuffer extends Case {
+	long run(InputStream in) throws IOException {
+	    PerishableReader reader = PerishableReader.newInstance(in, 60000L);
+	    LineBuffer line = new LineBuffer();
+	    long count = 0;
+	    while (reader.readLine(line)) {
+		count++;
+	    }
+	    return count;
+	}
+
+	public String toString() {
+	    return "PerishableReader.readLine(LineBuffer)";
+	}
+    }
+
+    static class ForEachLine extends Case {
+	long run(InputStream in) throws IOException {
+	    return LineBuffer.forEachLine(in, new LineBuffer.ILineHandler() {
+		public boolean handle(LineBuffer line) {
+		    return line.length() >= 0;
+		}
+	    });
+	}
+
+	public String toString() {
+	    return "LineBuffer.forEachLine";
+	}
+    }
+
+    static long measure(Case c, byte[] data) throws IOException {
+	com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+	long tid = Thread.currentThread().getId();
+	long before = mx.getThreadAllocatedBytes(tid);
+	c.run(new ByteArrayInputStream(data));
+	return mx.getThreadAllocatedBytes(tid) - before;
+    }
+
+    static byte[] synthesize(int lines) {
+	StringBuffer sb = new StringBuffer();
+	for (int i=0; i < lines; i++) {
+	    sb.append("kernel-headers-4.18.0-").append(i).append(".el8.x86_64 /usr/include/linux/version.h\n");
+	}
+	return sb.toString().getBytes(CHARSET);
+    }
+}
@@ -0,0 +1,123 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jsaf.io.PerishableReader;
+
+/**
+ * Measures the line-reading throughput of a PerishableReader wrapping a synthetic, non-interruptable stream, and compares
+ * it to a baseline that performs one timed (executor-based) read per byte, which is how PerishableReader worked prior to
+ * the introduction of its read-ahead window.
+ *
+ * Usage: java PerishableReaderBenchmark [megabytes] [baseline-megabytes]
+ */
+public class PerishableReaderBenchmark {
+    static final long MB = 1024L * 1024L;
+    static final long TIMEOUT = 60000L;
+
+    public static void main(String[] argv) throws Exception {
+	long size = (argv.length > 0 ? Long.parseLong(argv[0]) : 100L) * MB;
+	long baselineSize = (argv.length > 1 ? Long.parseLong(argv[1]) : 2L) * MB;
+
+	double baseline = baseline(baselineSize);
+	System.out.println(String.format("baseline (per-byte timed read): %10.2f MB/s (%d MB)", baseline, baselineSize / MB));
+	double windowed = windowed(size);
+	System.out.println(String.format("PerishableReader (windowed):    %10.2f MB/s (%d MB)", windowed, size / MB));
+	System.out.println(String.format("speedup: %.1fx", windowed / baseline));
+	System.exit(0);
+    }
+
+    /**
+     * Read all the lines from a PerishableReader.
+     */
+    static double windowed(long size) throws IOException {
+	PerishableReader reader = PerishableReader.newInstance(new SyntheticStream(size), TIMEOUT);
+	long start = System.nanoTime();
+	long lines = 0;
+	while (reader.readLine() != null) {
+	    lines++;
+	}
+	return throughput(size, System.nanoTime() - start);
+    }
+
+    /**
+     * Read all the bytes from the stream, one timed read at a time.
+     */
+    static double baseline(long size) throws Exception {
+	ExecutorService service = Executors.newCachedThreadPool();
+	try {
+	    final InputStream in = new SyntheticStream(size);
+	    Callable<Integer> task = new Callable<Integer>() {
+		public Integer call() throws IOException {
+		    return in.read();
+		}
+	    };
+	    long start = System.nanoTime();
+	    while (service.submit(task).get(TIMEOUT, TimeUnit.MILLISECONDS) != -1) {
+	    }
+	    return throughput(size, System.nanoTime() - start);
+	} finally {
+	    service.shutdown();
+	}
+    }
+
+    static double throughput(long bytes, long nanos) {
+	return ((double)bytes / MB) / ((double)nanos / 1000000000.0);
+    }
+
+    /**
+     * A stream of 80-column lines of ASCII text, whose type is not known to be interruptable.
+     */
+    static class SyntheticStream extends InputStream {
+	private static final byte[] LINE;
+	static {
+	    LINE = new byte[80];
+	    for (int i=0; i < LINE.length - 1; i++) {
+		LINE[i] = (byte)('a' + (i % 26));
+	    }
+	    LINE[LINE.length - 1] = '\n';
+	}
+
+	private long remaining;
+	private int ptr = 0;
+
+	SyntheticStream(long size) {
+	    remaining = size;
+	}
+
+	@Override
+	public int read() {
+	    if (remaining == 0) {
+		return -1;
+	    }
+	    remaining--;
+	    int ch = LINE[ptr++];
+	    if (ptr == LINE.length) {
+		ptr = 0;
+	    }
+	    return ch;
+	}
+
+	@Override
+	public int read(byte[] buff, int offset, int len) {
+	    if (remaining == 0) {
+		return -1;
+	    }
+	    len = (int)Math.min((long)len, remaining);
+	    for (int i=0; i < len; i++) {
+		buff[offset + i] = LINE[ptr++];
+		if (ptr == LINE.length) {
+		    ptr = 0;
+		}
+	    }
+	    remaining -= len;
+	    return len;
+	}
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jsaf.util.Base64;
+import jsaf.util.Checksum;
+
+/**
+ * Benchmarks for Base64 encoding and decoding, and for checksums.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    @Param({"MD5", "SHA1"})
+    public Checksum.Algorithm algorithm;
+
+    private byte[] data;
+    private String encoded;
+
+    @Setup
+    public void setup() throws IOException {
+	data = new byte[size];
+	Payload.COMMAND.stream(size).read(data);
+	encoded = Base64.encodeBytes(data);
+    }
+
+    @Benchmark
+    public String base64Encode() {
+	return Base64.encodeBytes(data);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() throws IOException {
+	return Base64.decode(encoded);
+    }
+
+    @Benchmark
+    public String checksum() {
+	return Checksum.getChecksum(data, algorithm);
+    }
+}
@@ -0,0 +1,97 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.cal10n.LocLogger;
+import org.slf4j.helpers.NOPLogger;
+
+import jsaf.Message;
+import jsaf.util.Lazy;
+import jsaf.util.LogMessageConveyor;
+import jsaf.util.SafeCLI;
+import jsaf.util.Strings;
+
+/**
+ * Benchmarks for the cost of logging command output when the log level is disabled.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+    /**
+     * The size of the command output, in bytes.
+     */
+    @Param({"4096", "1048576"})
+    public int size;
+
+    private LocLogger logger;
+    private String cmd, output;
+
+    @Setup
+    public void setup() throws IOException {
+	logger = new LocLogger(NOPLogger.NOP_LOGGER, new LogMessageConveyor());
+	cmd = "/bin/sh -c 'ls -l /usr/lib'";
+	InputStream in = Payload.COMMAND.stream(size);
+	ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+	byte[] buff = new byte[4096];
+	int len = 0;
+	while ((len = in.read(buff)) > 0) {
+	    out.write(buff, 0, len);
+	}
+	output = new String(out.toByteArray(), Strings.UTF8);
+    }
+
+    /**
+     * Logging as SafeCLI.exec did before 1.7: the messages are built whether or not they are logged.
+     */
+    @Benchmark
+    public void eager(Blackhole bh) {
+	logger.debug("Exec: " + cmd);
+	logger.trace("Output: " + output);
+	bh.consume(output);
+    }
+
+    /**
+     * Logging as SafeCLI.exec does now: nothing is formatted unless the level is enabled.
+     */
+    @Benchmark
+    public void lazy(Blackhole bh) {
+	logger.debug(Message.STATUS_EXEC, cmd);
+	logger.trace(Message.STATUS_EXEC_OUTPUT, Lazy.preview(output));
+	bh.consume(output);
+    }
+
+    /**
+     * A complete SafeCLI.exec call with logging disabled, for scale.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void exec(Blackhole bh) throws IOException {
+	bh.consume(SafeCLI.exec("echo x", 10000L, logger));
+    }
+}
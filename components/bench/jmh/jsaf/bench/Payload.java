@@ -0,0 +1,109 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.bench;
+
+import java.io.InputStream;
+
+import jsaf.util.Strings;
+
+/**
+ * Realistic synthetic payloads for the benchmarks. Payloads are generated on the fly by a repeating InputStream, so that
+ * even 1 GB payloads take no memory.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public enum Payload {
+    /**
+     * Package inventory output, like that of "rpm -qa --dump".
+     */
+    COMMAND {
+	String line(int i) {
+	    return new StringBuffer("/usr/lib64/libpackage-").append(i).append(".so.1 ").append(4096 + i % 65536)
+		.append(" 1650000000 3f2a9c1e7b5d40a8e6c1f0b2d9a7e3c5 0100755 root root 0 0 0 X\n").toString();
+	}
+    },
+
+    /**
+     * A Windows registry dump, like that of "reg query HKLM\SOFTWARE /s".
+     */
+    REGISTRY {
+	String line(int i) {
+	    if (i % 4 == 0) {
+		return new StringBuffer("\r\nHKEY_LOCAL_MACHINE\\SOFTWARE\\Vendor\\Product\\Component").append(i).append("\r\n").toString();
+	    } else {
+		return new StringBuffer("    Value").append(i).append("    REG_SZ    C:\\Program Files\\Vendor\\bin\\tool")
+		    .append(i).append(".exe\r\n").toString();
+	    }
+	}
+    };
+
+    /**
+     * The number of distinct lines in a payload block.
+     */
+    static final int BLOCK_LINES = 10000;
+
+    abstract String line(int i);
+
+    /**
+     * Get a block of BLOCK_LINES lines, which repeats to form the payload.
+     */
+    public byte[] block() {
+	StringBuffer sb = new StringBuffer();
+	for (int i=0; i < BLOCK_LINES; i++) {
+	    sb.append(line(i));
+	}
+	return sb.toString().getBytes(Strings.UTF8);
+    }
+
+    /**
+     * Get a stream of exactly size bytes of the payload.
+     */
+    public InputStream stream(long size) {
+	return new RepeatingStream(block(), size);
+    }
+
+    static class RepeatingStream extends InputStream {
+	private byte[] block;
+	private long remaining;
+	private int pos;
+
+	RepeatingStream(byte[] block, long size) {
+	    this.block = block;
+	    remaining = size;
+	    pos = 0;
+	}
+
+	@Override
+	public int read() {
+	    if (remaining == 0) {
+		return -1;
+	    }
+	    remaining--;
+	    int ch = block[pos++] & 0xFF;
+	    if (pos == block.length) {
+		pos = 0;
+	    }
+	    return ch;
+	}
+
+	@Override
+	public int read(byte[] buff, int offset, int len) {
+	    if (remaining == 0) {
+		return -1;
+	    }
+	    int n = (int)Math.min((long)Math.min(len, block.length - pos), remaining);
+	    System.arraycopy(block, pos, buff, offset, n);
+	    pos = (pos + n) % block.length;
+	    remaining -= n;
+	    return n;
+	}
+
+	@Override
+	public int available() {
+	    return (int)Math.min((long)Integer.MAX_VALUE, remaining);
+	}
+    }
+}
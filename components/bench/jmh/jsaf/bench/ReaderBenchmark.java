@@ -0,0 +1,117 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.bench;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jsaf.io.LineBuffer;
+import jsaf.io.LineIterator;
+import jsaf.io.PerishableReader;
+import jsaf.io.SimpleReader;
+import jsaf.io.Streams;
+import jsaf.io.XMLFilterStream;
+import jsaf.util.Strings;
+
+/**
+ * Benchmarks for reading command output: line iteration with PerishableReader, LineIterator and SimpleReader, and XML
+ * filtering with XMLFilterStream. Each operation consumes an entire payload of the given size.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+    @Param({"1024", "1048576", "104857600", "1073741824"})
+    public long size;
+
+    @Param({"COMMAND", "REGISTRY"})
+    public Payload payload;
+
+    @Benchmark
+    public void perishableReaderReadLine(Blackhole bh) throws IOException {
+	PerishableReader reader = PerishableReader.newInstance(payload.stream(size), 60000L);
+	String line;
+	while ((line = reader.readLine(Strings.UTF8)) != null) {
+	    bh.consume(line);
+	}
+    }
+
+    @Benchmark
+    public void perishableReaderLineBuffer(Blackhole bh) throws IOException {
+	PerishableReader reader = PerishableReader.newInstance(payload.stream(size), 60000L);
+	LineBuffer line = new LineBuffer();
+	while (reader.readLine(line)) {
+	    bh.consume(line.size());
+	}
+    }
+
+    @Benchmark
+    public void lineIterator(Blackhole bh) throws IOException {
+	LineIterator iter = new LineIterator(payload.stream(size));
+	while (iter.hasNext()) {
+	    bh.consume(iter.next());
+	}
+    }
+
+    @Benchmark
+    public void simpleReaderReadLine(Blackhole bh) throws IOException {
+	SimpleReader reader = new SimpleReader(payload.stream(size));
+	String line;
+	while ((line = reader.readLine()) != null) {
+	    bh.consume(line);
+	}
+    }
+
+    @Benchmark
+    public long xmlFilterStream() throws IOException {
+	InputStream in = XMLFilterStream.filterStream(payload.stream(size), true);
+	CountingStream out = new CountingStream();
+	Streams.copy(in, out, true);
+	return out.count;
+    }
+
+    /**
+     * The baseline for xmlFilterStream: copying the payload without filtering.
+     */
+    @Benchmark
+    public long rawCopy() throws IOException {
+	CountingStream out = new CountingStream();
+	Streams.copy(payload.stream(size), out, true);
+	return out.count;
+    }
+
+    static class CountingStream extends java.io.OutputStream {
+	long count = 0;
+
+	@Override
+	public void write(int b) {
+	    count++;
+	}
+
+	@Override
+	public void write(byte[] b, int offset, int len) {
+	    count += len;
+	}
+    }
+}
@@ -0,0 +1,118 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jsaf.util.Environment;
+import jsaf.util.Regex;
+
+/**
+ * Benchmarks for POSIX regular expression translation and environment variable expansion.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextBenchmark {
+    static final String[] PATTERNS = {
+	"^/usr/lib(64)?/[^/]+\\.so(\\.[0-9]+){1,3}$",
+	"^[[:alpha:]][[:alnum:]_]{0,31}$",
+	"^HKEY_LOCAL_MACHINE\\\\SOFTWARE\\\\[^\\\\]+\\\\{[0-9A-F-]{36}}$",
+	"[[:space:]]*#.*",
+	"^(ssh|telnet)d?[[:digit:]]*\\.conf$"
+    };
+
+    /**
+     * The number of variables in the environment.
+     */
+    @Param({"50", "500"})
+    public int variables;
+
+    private Map<String, String> map;
+    private Environment env;
+    private String[] inputs;
+
+    @Setup
+    public void setup() {
+	map = new HashMap<String, String>();
+	for (int i=0; i < variables; i++) {
+	    map.put("VAR" + i, "C:\\Program Files\\Vendor" + i);
+	}
+	map.put("SystemRoot", "C:\\Windows");
+	map.put("windir", "%SystemRoot%");
+	map.put("ProgramData", "C:\\ProgramData");
+	env = new Environment(map, true);
+	inputs = new String[] {
+	    "%windir%\\System32\\drivers\\etc\\hosts",
+	    "%PROGRAMDATA%\\Vendor\\%VAR0%\\config.xml",
+	    "C:\\no\\variables\\here.txt",
+	    "%UNDEFINED%\\file.txt"
+	};
+    }
+
+    @Benchmark
+    public void posix2Java(Blackhole bh) {
+	for (String pattern : PATTERNS) {
+	    bh.consume(Regex.posix2Java(pattern));
+	}
+    }
+
+    @Benchmark
+    public void expand(Blackhole bh) {
+	for (String input : inputs) {
+	    bh.consume(env.expand(input));
+	}
+    }
+
+    /**
+     * The regex-based expansion used by AbstractEnvironment before 1.7, for comparison.
+     */
+    @Benchmark
+    public void expandRegex(Blackhole bh) {
+	for (String input : inputs) {
+	    bh.consume(expandRegex(map, input));
+	}
+    }
+
+    // Private
+
+    private static String expandRegex(Map<String, String> map, String data) {
+	if (data.indexOf('%') < 0) {
+	    return data;
+	}
+	String originalData = data;
+	for (Map.Entry<String, String> entry : map.entrySet()) {
+	    String pattern = new StringBuffer("(?i)%").append(Regex.escapeRegex(entry.getKey())).append("%").toString();
+	    data = data.replaceAll(pattern, Matcher.quoteReplacement(entry.getValue()));
+	}
+	if (data.equals(originalData)) {
+	    return data;
+	} else {
+	    return expandRegex(map, data);
+	}
+    }
+}
@@ -48,6 +48,7 @@ CLASSES=\
 	jsaf.intf.util.ILoggable	\
 	jsaf.intf.util.IProperty	\
 	jsaf.intf.util.IPublisher	\
+	jsaf.intf.util.IScheduledTask	\
 	jsaf.intf.util.ISearchable	\
 	jsaf.intf.util.ISubscriber	\
 	jsaf.intf.util.Progress	\
@@ -83,16 +84,27 @@ CLASSES=\
 	jsaf.intf.windows.wmi.ISWbemProperty	\
 	jsaf.intf.windows.wmi.ISWbemPropertySet	\
 	jsaf.intf.windows.wmi.IWmiProvider	\
+	jsaf.io.BufferPool	\
 	jsaf.io.CachedURLConnection	\
+	jsaf.io.ChunkedBuffer	\
+	jsaf.io.LineBuffer	\
 	jsaf.io.LineIterator	\
 	jsaf.io.LittleEndian	\
+	jsaf.io.MappedLines	\
 	jsaf.io.PerishableReader	\
+	jsaf.io.ProgressAggregator	\
 	jsaf.io.ProgressInputStream	\
 	jsaf.io.ProgressOutputStream	\
+	jsaf.io.ProgressPolicy	\
+	jsaf.io.ProgressTracker	\
+	jsaf.io.ResumableTransfer	\
 	jsaf.io.SimpleReader	\
+	jsaf.io.SpillBuffer	\
 	jsaf.io.StreamLogger	\
 	jsaf.io.Streams	\
+	jsaf.io.TempFiles	\
 	jsaf.io.TruncatedInputStream	\
+	jsaf.io.URLCache	\
 	jsaf.io.XMLFilterStream	\
 	jsaf.protocol.JSAFURLStreamHandlerFactory	\
 	jsaf.protocol.memory.MemoryURLConnection	\
@@ -100,6 +112,8 @@ CLASSES=\
 	jsaf.protocol.memory.MemoryURLStreamHandler	\
 	jsaf.protocol.tftp.TftpURLConnection	\
 	jsaf.protocol.tftp.TftpURLStreamHandler	\
+	jsaf.protocol.zip.ZipArchives	\
+	jsaf.protocol.zip.ZipIndex	\
 	jsaf.protocol.zip.ZipURLConnection	\
 	jsaf.protocol.zip.ZipURLStreamHandler	\
 	jsaf.provider.SessionException	\
@@ -120,10 +134,13 @@ CLASSES=\
 	jsaf.util.ConnectionSpecification	\
 	jsaf.util.Environment	\
 	jsaf.util.IniFile	\
+	jsaf.util.Lazy	\
 	jsaf.util.LogCensor	\
 	jsaf.util.LogMessageConveyor	\
 	jsaf.util.PropertyUtil	\
 	jsaf.util.Publisher	\
 	jsaf.util.SafeCLI	\
 	jsaf.util.Regex	\
-	jsaf.util.Strings
+	jsaf.util.Strings	\
+	jsaf.util.TaskExecutor	\
+	jsaf.util.TimingWheel
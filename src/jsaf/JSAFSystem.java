@@ -9,16 +9,16 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.URL;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
+import jsaf.intf.util.IScheduledTask;
 import jsaf.protocol.JSAFURLStreamHandlerFactory;
+import jsaf.util.TimingWheel;
 
 /**
  * This class is used to retrieve JSAF-wide resources, like the location of the JSAF workspace directory, and the
- * JSAF event system timer.
+ * JSAF event system scheduler.
  *
  * @author David A. Solin
  * @version %I% %G%
@@ -26,8 +26,9 @@ import jsaf.protocol.JSAFURLStreamHandlerFactory;
 public final class JSAFSystem {
     private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().indexOf("windows") != -1;
 
-    private static Timer timer;
-    private static Map<Runnable, TimerTask> tasks = new HashMap<Runnable, TimerTask>();
+    private static final TimingWheel wheel = new TimingWheel("jSAF System Timer", 10L, 512, 2);
+    private static final ConcurrentHashMap<Runnable, IScheduledTask> tasks = new ConcurrentHashMap<Runnable, IScheduledTask>();
+    private static Timer timer = null;
     private static File dataDir = null;
     private static boolean registeredHandlers = false;
 
@@ -49,7 +50,6 @@ public final class JSAFSystem {
 	    File homeDir = new File(System.getProperty("user.home"));
 	    dataDir = new File(homeDir, ".jSAF");
 	}
-	timer = new JSAFSystemTimer();
     }
 
     /**
@@ -68,7 +68,10 @@ public final class JSAFSystem {
      * @deprecated since 1.4. Use the schedule methods instead.
      */
     @Deprecated
-    public static Timer getTimer() {
+    public static synchronized Timer getTimer() {
+	if (timer == null) {
+	    timer = new JSAFSystemTimer();
+	}
 	return timer;
     }
 
@@ -77,10 +80,8 @@ public final class JSAFSystem {
      *
      * @since 1.4
      */
-    public static synchronized void schedule(Runnable task, Date time) {
-	Task wrapper = new Task(task);
-	timer.schedule(wrapper, time);
-	tasks.put(task, wrapper);
+    public static void schedule(Runnable task, Date time) {
+	schedule(task, time.getTime() - System.currentTimeMillis());
     }
 
     /**
@@ -88,10 +89,8 @@ public final class JSAFSystem {
      *
      * @since 1.4
      */
-    public static synchronized void schedule(Runnable task, Date firstTime, long period) {
-	Task wrapper = new Task(task);
-	timer.schedule(wrapper, firstTime, period);
-	tasks.put(task, wrapper);
+    public static void schedule(Runnable task, Date firstTime, long period) {
+	schedule(task, firstTime.getTime() - System.currentTimeMillis(), period);
     }
 
     /**
@@ -99,10 +98,9 @@ public final class JSAFSystem {
      *
      * @since 1.4
      */
-    public static synchronized void schedule(Runnable task, long delay) {
-	Task wrapper = new Task(task);
-	timer.schedule(wrapper, delay);
-	tasks.put(task, wrapper);
+    public static void schedule(Runnable task, long delay) {
+	Registered wrapper = new Registered(task, false);
+	register(wrapper, wheel.schedule(wrapper, delay));
     }
 
     /**
@@ -110,10 +108,35 @@ public final class JSAFSystem {
      *
      * @since 1.4
      */
-    public static synchronized void schedule(Runnable task, long delay, long period) {
-	Task wrapper = new Task(task);
-	timer.schedule(wrapper, delay, period);
-	tasks.put(task, wrapper);
+    public static void schedule(Runnable task, long delay, long period) {
+	if (period <= 0) {
+	    throw new IllegalArgumentException(Long.toString(period));
+	}
+	Registered wrapper = new Registered(task, true);
+	register(wrapper, wheel.schedule(wrapper, delay, period));
+    }
+
+    /**
+     * Schedules the specified task for execution after the specified delay, returning a handle that can be used to cancel
+     * it. Tasks scheduled this way are not known to cancelTask(Runnable).
+     *
+     * @since 1.7
+     */
+    public static IScheduledTask scheduleTask(Runnable task, long delay) {
+	return wheel.schedule(task, delay);
+    }
+
+    /**
+     * Schedules the specified task for repeated fixed-delay execution, beginning after the specified delay, returning a
+     * handle that can be used to cancel it. Tasks scheduled this way are not known to cancelTask(Runnable).
+     *
+     * @since 1.7
+     */
+    public static IScheduledTask scheduleTask(Runnable task, long delay, long period) {
+	if (period <= 0) {
+	    throw new IllegalArgumentException(Long.toString(period));
+	}
+	return wheel.schedule(task, delay, period);
     }
 
     /**
@@ -126,12 +149,9 @@ public final class JSAFSystem {
      *
      * @since 1.4
      */
-    public static synchronized boolean cancelTask(Runnable task) {
-	if (tasks.containsKey(task)) {
-	    return tasks.remove(task).cancel();
-	} else {
-	    return false;
-	}
+    public static boolean cancelTask(Runnable task) {
+	IScheduledTask handle = tasks.remove(task);
+	return handle == null ? false : handle.cancel();
     }
 
     public static void setDataDirectory(File dir) throws IllegalArgumentException {
@@ -157,27 +177,42 @@ public final class JSAFSystem {
 
     // Private
 
-    static class Task extends TimerTask {
-	private Runnable task;
+    private static void register(Registered wrapper, IScheduledTask handle) {
+	tasks.put(wrapper.task, handle);
+	wrapper.handle = handle;
+	if (wrapper.done) {
+	    tasks.remove(wrapper.task, handle);
+	}
+    }
 
-	Task(Runnable task) {
+    /**
+     * Wrapper for a task scheduled using one of the legacy schedule methods, which can be cancelled using cancelTask.
+     * One-time tasks remove themselves from the registry after they have run.
+     */
+    static class Registered implements Runnable {
+	final Runnable task;
+	final boolean repeating;
+	volatile IScheduledTask handle;
+	volatile boolean done = false;
+
+	Registered(Runnable task, boolean repeating) {
 	    this.task = task;
+	    this.repeating = repeating;
 	}
 
 	public void run() {
 	    try {
 		task.run();
-	    } catch (Throwable t) {
-		Message.getLogger().warn(Message.getMessage(Message.ERROR_EXCEPTION), t);
+	    } finally {
+		if (!repeating) {
+		    done = true;
+		    IScheduledTask h = handle;
+		    if (h != null) {
+			tasks.remove(task, h);
+		    }
+		}
 	    }
 	}
-
-	@Override
-	public boolean cancel() {
-	    boolean result = super.cancel();
-	    JSAFSystem.timer.purge();
-	    return result;
-	}
     }
 
     static class JSAFSystemTimer extends Timer {
@@ -39,6 +39,7 @@ public enum Message {
     ERROR_FACTORY_INITIALIZER,
     ERROR_IO,
     ERROR_IO_NOT_DIR,
+    ERROR_IO_RENAME,
     ERROR_MEMORY_URL_MAPPING,
     ERROR_PROCESS_RETRY,
     ERROR_PROTOCOL,
@@ -47,14 +48,21 @@ public enum Message {
     ERROR_SESSION_INTEGRITY,
     ERROR_SID,
     ERROR_TFTP,
+    ERROR_TRANSFER_CHANGED,
+    ERROR_TRANSFER_STALLED,
     ERROR_TRUNCATE,
     ERROR_UNIX_FLAVOR,
     ERROR_URL,
     STATUS_COMMAND_OUTPUT_PROGRESS,
     STATUS_COMMAND_OUTPUT_TEMP,
+    STATUS_EXEC,
+    STATUS_EXEC_OUTPUT,
     STATUS_PROCESS_RETRY,
     STATUS_PUBLISHER_STOP,
+    STATUS_TRANSFER_RESUME,
+    STATUS_TRUNCATED,
     STATUS_URL_CACHE,
+    STATUS_URL_CACHE_HIT,
     WARNING_COMMAND_OUTPUT,
     WARNING_MISSING_OUTPUT,
     WARNING_PERISHABLEIO_INTERRUPT,
@@ -116,6 +124,16 @@ public enum Message {
 	return conveyor.getMessage(key, args);
     }
 
+    /**
+     * Resolve the messages of all the Enum classes with which Message has been extended (and its own), so that the cost of
+     * loading and parsing them is paid at startup, rather than when they are first logged.
+     *
+     * @since 1.7
+     */
+    public static void warm() throws MessageConveyorException {
+	conveyor.warm();
+    }
+
     public static Set<Map.Entry<Class<? extends Enum<?>>, IMessageConveyor>> getConveyors() {
 	return conveyor.getConveyors().entrySet();
     }
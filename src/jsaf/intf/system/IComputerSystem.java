@@ -34,6 +34,14 @@ public interface IComputerSystem extends IServiceHost {
      */
     String PROP_PROCESS_MAXBUFFLEN = "process.output.maxBufferSize";
 
+    /**
+     * Property governing whether process output that exceeds PROP_PROCESS_MAXBUFFLEN should be spilled to a temporary file
+     * in the session workspace (true, the default), or truncated with an error (false).
+     *
+     * @since 1.7
+     */
+    String PROP_PROCESS_SPILL = "process.output.spillToDisk";
+
     /**
      * Property governing whether the filesystem cache layer should be JDBM-backed (true) or memory-backed (false).
      *
@@ -0,0 +1,36 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.intf.util;
+
+/**
+ * A handle to a task that has been scheduled for (possibly repeated) future execution.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public interface IScheduledTask {
+    /**
+     * Get the Runnable that was scheduled.
+     *
+     * @since 1.7
+     */
+    Runnable getTask();
+
+    /**
+     * Cancel the task.
+     *
+     * @return true if this prevents one or more scheduled executions of the task from taking place.
+     *
+     * @since 1.7
+     */
+    boolean cancel();
+
+    /**
+     * Returns true if cancel() has been called.
+     *
+     * @since 1.7
+     */
+    boolean isCancelled();
+}
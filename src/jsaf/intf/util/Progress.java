@@ -17,8 +17,8 @@ public enum Progress {
     START,
 
     /**
-     * Notification indicating the percentage completion has incremented by one.  Argument is a Progress.Update showing percentage complete and
-     * number of bytes read so far.
+     * Notification indicating the percentage completion has incremented by one (or, since 1.7, by one or more, as updates may
+     * be coalesced).  Argument is a Progress.Update showing percentage complete and number of bytes read so far.
      */
     UPDATE,
 
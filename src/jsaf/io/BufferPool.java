@@ -0,0 +1,205 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of scratch buffers, shared by jSAF's I/O code. Buffers come in a few fixed sizes (tiers); a request is served by
+ * the smallest tier that is large enough, so a borrowed buffer may be larger than requested. Each thread keeps one buffer
+ * of each tier for itself, and returned buffers beyond that go to a shared, bounded pool for each tier. Requests larger
+ * than the largest tier are simply allocated.
+ *
+ * A buffer must be returned at most once, and must not be used after it has been returned.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class BufferPool {
+    /**
+     * The buffer sizes.
+     */
+    static final int[] TIERS = {16, 512, 4096, 65536, 1048576};
+
+    /**
+     * The maximum number of buffers of each tier held by the shared pool.
+     */
+    static final int[] SHARED_LIMITS = {64, 64, 32, 16, 4};
+
+    private static final ThreadLocal<byte[][]> LOCAL = new ThreadLocal<byte[][]>() {
+	@Override
+	protected byte[][] initialValue() {
+	    return new byte[TIERS.length][];
+	}
+    };
+
+    private static final Tier<byte[]>[] SHARED = newTiers();
+    private static final Tier<ByteBuffer>[] DIRECT = newTiers();
+
+    private static final AtomicLong HITS = new AtomicLong(0);
+    private static final AtomicLong MISSES = new AtomicLong(0);
+    private static final AtomicLong ALLOCATED = new AtomicLong(0);
+
+    /**
+     * Borrow a byte array of at least the specified length.
+     */
+    public static byte[] borrow(int minSize) {
+	int tier = tierOf(minSize);
+	if (tier == -1) {
+	    return allocate(minSize);
+	}
+	byte[][] local = LOCAL.get();
+	byte[] buff = local[tier];
+	if (buff != null) {
+	    local[tier] = null;
+	    HITS.incrementAndGet();
+	    return buff;
+	}
+	buff = SHARED[tier].poll();
+	if (buff == null) {
+	    return allocate(TIERS[tier]);
+	}
+	HITS.incrementAndGet();
+	return buff;
+    }
+
+    /**
+     * Return a byte array obtained from borrow. Arrays that are not the size of a tier are discarded.
+     */
+    public static void release(byte[] buff) {
+	int tier = exactTierOf(buff.length);
+	if (tier != -1) {
+	    byte[][] local = LOCAL.get();
+	    if (local[tier] == null) {
+		local[tier] = buff;
+	    } else {
+		SHARED[tier].offer(buff);
+	    }
+	}
+    }
+
+    /**
+     * Borrow a direct ByteBuffer with a capacity of at least the specified size. The buffer is cleared, and its limit is
+     * set to minSize. Direct buffers are only held by the shared pool.
+     */
+    public static ByteBuffer borrowDirect(int minSize) {
+	int tier = tierOf(minSize);
+	ByteBuffer buff = tier == -1 ? null : DIRECT[tier].poll();
+	if (buff == null) {
+	    MISSES.incrementAndGet();
+	    int size = tier == -1 ? minSize : TIERS[tier];
+	    ALLOCATED.addAndGet(size);
+	    buff = ByteBuffer.allocateDirect(size);
+	} else {
+	    HITS.incrementAndGet();
+	}
+	buff.clear();
+	buff.limit(minSize);
+	return buff;
+    }
+
+    /**
+     * Return a direct ByteBuffer obtained from borrowDirect.
+     */
+    public static void release(ByteBuffer buff) {
+	int tier = exactTierOf(buff.capacity());
+	if (tier != -1 && buff.isDirect()) {
+	    DIRECT[tier].offer(buff);
+	}
+    }
+
+    /**
+     * Get the number of requests that were served by a pooled buffer.
+     */
+    public static long getHits() {
+	return HITS.get();
+    }
+
+    /**
+     * Get the number of requests that required a new buffer to be allocated.
+     */
+    public static long getMisses() {
+	return MISSES.get();
+    }
+
+    /**
+     * Get the total number of bytes allocated for new buffers.
+     */
+    public static long getAllocatedBytes() {
+	return ALLOCATED.get();
+    }
+
+    // Private
+
+    private static byte[] allocate(int size) {
+	MISSES.incrementAndGet();
+	ALLOCATED.addAndGet(size);
+	return new byte[size];
+    }
+
+    /**
+     * Get the index of the smallest tier that can hold size bytes, or -1 if there is none.
+     */
+    private static int tierOf(int size) {
+	for (int i=0; i < TIERS.length; i++) {
+	    if (size <= TIERS[i]) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Get the index of the tier of exactly the specified size, or -1 if there is none.
+     */
+    private static int exactTierOf(int size) {
+	int tier = tierOf(size);
+	return tier != -1 && TIERS[tier] == size ? tier : -1;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Tier<T>[] newTiers() {
+	Tier<T>[] tiers = new Tier[TIERS.length];
+	for (int i=0; i < tiers.length; i++) {
+	    tiers[i] = new Tier<T>(SHARED_LIMITS[i]);
+	}
+	return tiers;
+    }
+
+    /**
+     * A bounded, lock-free queue of buffers.
+     */
+    static class Tier<T> {
+	private Queue<T> queue;
+	private AtomicInteger size;
+	private int limit;
+
+	Tier(int limit) {
+	    this.limit = limit;
+	    queue = new ConcurrentLinkedQueue<T>();
+	    size = new AtomicInteger(0);
+	}
+
+	T poll() {
+	    T t = queue.poll();
+	    if (t != null) {
+		size.decrementAndGet();
+	    }
+	    return t;
+	}
+
+	void offer(T t) {
+	    if (size.incrementAndGet() > limit) {
+		size.decrementAndGet();
+	    } else {
+		queue.offer(t);
+	    }
+	}
+    }
+}
@@ -3,36 +3,41 @@
 
 package jsaf.io;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FilterInputStream;
+import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.zip.GZIPInputStream;
-
-import org.apache.tools.bzip2.CBZip2InputStream;
 import org.slf4j.cal10n.LocLogger;
 
 import jsaf.Message;
 import jsaf.intf.util.IDisposable;
-import jsaf.util.Strings;
+import jsaf.util.Checksum;
 
 /**
  * A URLConnection that permits multiple calls to getInputStream, but only retrieves data from the URL once (unless
- * that url points to a file, in which case this class simply provides access to that file).
+ * that url points to an uncompressed file, in which case this class simply provides access to that file).
+ *
+ * Since 1.7, the data is stored in the persistent URLCache, so it is shared by all the connections to the same URL (and
+ * only downloaded again if it has changed). The URL is revalidated when the connection is connected, and if it must be
+ * downloaded, the first stream returned by getInputStream reads the contents as they are downloaded (so the progress of
+ * the download can be monitored); they are stored in the cache once that stream has been read to the end. The
+ * decompressed contents of compressed files are cached in the same way, so that they are only decompressed once, and
+ * their length and checksum are known without reading them again.
  *
  * @author David A. Solin
  * @version %I% %G%
  * @since 1.6.5
  */
-public class CachedURLConnection extends URLConnection implements IDisposable {
-    private File temp=null, original=null;
-    private CachingStream stream = null;
+public class CachedURLConnection extends URLConnection implements IDisposable, Closeable {
+    private File original = null;
+    private URLCache.Entry entry = null;
+    private URLCache.Download download = null, stream = null;
     private long contentLength = -1;
     private LocLogger logger;
 
@@ -49,9 +54,21 @@ public class CachedURLConnection extends URLConnection implements IDisposable {
 		} catch (URISyntaxException e) {
 		    throw new IOException(e);
 		}
-	    } else {
-		temp = File.createTempFile("url_cache", ".tmp");
-		temp.deleteOnExit();
+		BufferedInputStream in = new BufferedInputStream(new FileInputStream(original));
+		try {
+		    if (Streams.detect(in) != null) {
+			//
+			// Cache the decompressed contents, so that they are only decompressed once
+			//
+			original = null;
+		    }
+		} finally {
+		    in.close();
+		}
+	    }
+	    if (original == null) {
+		download = URLCache.getInstance().open(url, logger);
+		entry = download.getEntry();
 	    }
 	    connected = true;
 	}
@@ -62,12 +79,26 @@ public class CachedURLConnection extends URLConnection implements IDisposable {
 	connect();
 	if (original != null) {
 	    return Streams.open(url);
-	} else if (stream != null && stream.isEOF()) {
-	    return new FileInputStream(temp);
-	} else {
-	    logger.debug(Message.STATUS_URL_CACHE, url.toString(), temp.toString());
-	    return stream = new CachingStream(Streams.open(url));
+	} else if (download != null) {
+	    stream = download;
+	    download = null;
+	    return stream;
+	}
+	if (entry == null) {
+	    entry = stream.getEntry();
+	}
+	if (entry != null) {
+	    try {
+		return new FileInputStream(entry.getFile());
+	    } catch (FileNotFoundException e) {
+		// The entry was evicted from the cache, so open the URL again
+	    }
 	}
+	//
+	// The first stream has not been read to the end (or the entry was evicted), so open another
+	//
+	entry = null;
+	return stream = URLCache.getInstance().open(url, logger);
     }
 
     @Override
@@ -75,44 +106,79 @@ public class CachedURLConnection extends URLConnection implements IDisposable {
 	return (int)getContentLengthLong();
     }
 
+    /**
+     * Get the length of the (decompressed) content. While the content of a compressed URL is being read for the first time,
+     * its length is not yet known, and -1 is returned.
+     */
     //@Override -- NB: override annotation is invalid when compiling with JDK 1.6
     public long getContentLengthLong() {
 	if (contentLength != -1) {
 	    return contentLength;
 	}
-	InputStream in = null;
 	try {
 	    connect();
-	    in = Streams.open(url);
 	    if (original != null) {
-		if (in instanceof GZIPInputStream || in instanceof CBZip2InputStream) {
-		    return contentLength = Streams.measure(in);
-		} else {
-		    return contentLength = original.length();
-		}
+		return contentLength = original.length();
+	    }
+	    if (entry == null && stream != null) {
+		entry = stream.getEntry();
+	    }
+	    if (entry != null) {
+		return contentLength = entry.getLength();
+	    } else if (download != null && download.getLength() == -1) {
+		//
+		// Nothing is reading the download yet, so finish it to find the length of the decompressed contents
+		//
+		return contentLength = getEntry().getLength();
 	    } else {
-		if (temp.length() == 0) {
-		    // buffer the whole file
-		    Streams.copy(in, new FileOutputStream(temp), true);
-		}
-		return contentLength = temp.length();
+		//
+		// The contents are still being read, so do not interfere, and report the length if it is known
+		//
+		return (download == null ? stream : download).getLength();
 	    }
 	} catch (IOException e) {
 	    throw new RuntimeException(e);
-	} finally {
-	    Streams.close(in);
+	}
+    }
+
+    /**
+     * Get the SHA-1 checksum of the (decompressed) content. For a cached URL, the checksum is computed while the content
+     * is downloaded, so this does not require the content to be read again.
+     *
+     * @since 1.7
+     */
+    public String getChecksum() throws IOException {
+	connect();
+	if (original == null) {
+	    return getEntry().getChecksum();
+	} else {
+	    return Checksum.getChecksum(original, Checksum.Algorithm.SHA1);
 	}
     }
 
     // Implement IDisposable
 
     public void dispose() {
-	if (temp != null) {
-	    temp.delete();
+	if (download != null) {
+	    Streams.close(download);
+	    download = null;
 	}
+	stream = null;
+	entry = null;
 	url = null;
     }
 
+    // Implement Closeable
+
+    /**
+     * Same as dispose.
+     *
+     * @since 1.7
+     */
+    public void close() {
+	dispose();
+    }
+
     // Implement ILoggable
 
     public void setLogger(LocLogger logger) {
@@ -123,51 +189,23 @@ public class CachedURLConnection extends URLConnection implements IDisposable {
 	return logger;
     }
 
-    // Internal
-
-    class CachingStream extends InputStream {
-	private InputStream in;
-	private boolean eof = false;
-
-	CachingStream(InputStream in) throws IOException {
-	    this.in = new StreamLogger(in, CachedURLConnection.this.temp);
-	}
-
-	public boolean isEOF() {
-	    return eof;
-	}
-
-	public int read() throws IOException {
-	    if (eof) {
-		return -1;
-	    } else {
-		int ch = in.read();
-		if (ch == -1) {
-		    eof = true;
-		    close();
-		}
-		return ch;
-	    }
-	}
+    // Private
 
-	public int read(byte[] buff) throws IOException {
-	    return read(buff, 0, buff.length);
+    /**
+     * Get the cache entry of the contents, downloading them if necessary.
+     */
+    private URLCache.Entry getEntry() throws IOException {
+	if (entry == null && stream != null) {
+	    entry = stream.getEntry();
 	}
-
-	public int read(byte[] buff, int offset, int len) throws IOException {
-	    if (eof) {
-		return -1;
+	if (entry == null) {
+	    if (download == null) {
+		entry = URLCache.getInstance().get(url, logger);
 	    } else {
-		int result = in.read(buff, offset, len);
-		if (result == -1) {
-		    eof = true;
-		}
-		return result;
+		entry = download.complete();
+		download = null;
 	    }
 	}
-
-	public void close() throws IOException {
-	    in.close();
-	}
+	return entry;
     }
 }
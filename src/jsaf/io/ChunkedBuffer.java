@@ -0,0 +1,450 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import jsaf.util.Strings;
+
+/**
+ * A growable in-memory byte store, which unlike a ByteArrayOutputStream never copies data that has already been written
+ * into a larger array. Data is held in fixed-size chunks (except for the first chunk, which grows until it reaches the
+ * chunk size, so that small outputs stay small), and can be accessed in place via ByteBuffer, InputStream and line views.
+ *
+ * Lines are delimited by LF, CR or CRLF, and are indexed lazily the first time they are accessed. A line consisting solely
+ * of ASCII characters is returned as a CharSequence view over the underlying bytes; other lines are decoded on demand.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class ChunkedBuffer extends OutputStream {
+    static final int SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << SHIFT;
+    static final int MASK = CHUNK_SIZE - 1;
+
+    private List<byte[]> chunks;
+    private long size;
+    private Charset charset;
+
+    private int[] lineBounds;	// start and end (exclusive of terminator) of each line, as pairs
+    private BitSet nonAscii;	// lines containing non-ASCII bytes
+    private int lineCount;	// -1 when the index is not current
+
+    public ChunkedBuffer() {
+	this(Strings.UTF8);
+    }
+
+    /**
+     * Create a buffer whose lines will be decoded using the specified charset, which must be ASCII-compatible.
+     */
+    public ChunkedBuffer(Charset charset) {
+	chunks = new ArrayList<byte[]>();
+	size = 0L;
+	this.charset = charset;
+	lineCount = -1;
+    }
+
+    /**
+     * Get the number of bytes in the buffer.
+     */
+    public long size() {
+	return size;
+    }
+
+    /**
+     * Discard the buffer contents.
+     */
+    public void reset() {
+	chunks.clear();
+	size = 0L;
+	invalidate();
+    }
+
+    /**
+     * Get the byte at the specified position.
+     */
+    public byte byteAt(long pos) {
+	if (pos < 0 || pos >= size) {
+	    throw new IndexOutOfBoundsException(Long.toString(pos));
+	}
+	return chunks.get((int)(pos >>> SHIFT))[(int)(pos & MASK)];
+    }
+
+    /**
+     * Copy len bytes starting at the specified position into buff.
+     */
+    public void get(long pos, byte[] buff, int offset, int len) {
+	if (pos < 0 || len < 0 || pos + len > size) {
+	    throw new IndexOutOfBoundsException(Long.toString(pos));
+	}
+	while (len > 0) {
+	    byte[] chunk = chunks.get((int)(pos >>> SHIFT));
+	    int ptr = (int)(pos & MASK);
+	    int n = Math.min(len, chunk.length - ptr);
+	    System.arraycopy(chunk, ptr, buff, offset, n);
+	    pos += n;
+	    offset += n;
+	    len -= n;
+	}
+    }
+
+    /**
+     * Find the position of the first occurrence of b at or after from, or -1 if there is none.
+     */
+    public long indexOf(byte b, long from) {
+	for (long pos = Math.max(0L, from); pos < size; ) {
+	    byte[] chunk = chunks.get((int)(pos >>> SHIFT));
+	    int ptr = (int)(pos & MASK);
+	    int end = (int)Math.min((long)chunk.length, size - (pos - ptr));
+	    for (int i=ptr; i < end; i++) {
+		if (chunk[i] == b) {
+		    return pos - ptr + i;
+		}
+	    }
+	    pos += end - ptr;
+	}
+	return -1L;
+    }
+
+    /**
+     * Copy the contents of the buffer into a new byte array.
+     */
+    public byte[] toByteArray() {
+	if (size > Integer.MAX_VALUE) {
+	    throw new OutOfMemoryError(Long.toString(size));
+	}
+	byte[] data = new byte[(int)size];
+	get(0L, data, 0, data.length);
+	return data;
+    }
+
+    /**
+     * Get read-only ByteBuffer views of the chunks of the buffer (no data is copied).
+     */
+    public ByteBuffer[] toByteBuffers() {
+	ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+	long remaining = size;
+	for (int i=0; i < buffers.length; i++) {
+	    byte[] chunk = chunks.get(i);
+	    int len = (int)Math.min((long)chunk.length, remaining);
+	    buffers[i] = ByteBuffer.wrap(chunk, 0, len).asReadOnlyBuffer();
+	    remaining -= len;
+	}
+	return buffers;
+    }
+
+    /**
+     * Get a read-only ByteBuffer containing the contents of the buffer. No data is copied unless the buffer spans more than
+     * one chunk.
+     */
+    public ByteBuffer toByteBuffer() {
+	if (chunks.size() == 1) {
+	    return ByteBuffer.wrap(chunks.get(0), 0, (int)size).asReadOnlyBuffer();
+	} else {
+	    return ByteBuffer.wrap(toByteArray()).asReadOnlyBuffer();
+	}
+    }
+
+    /**
+     * Get an InputStream that reads the contents of the buffer in place.
+     */
+    public InputStream getInputStream() {
+	return new ChunkInputStream();
+    }
+
+    /**
+     * Decode len bytes starting at the specified position.
+     */
+    public String toString(long pos, int len, Charset charset) {
+	if (chunks.size() > 0 && (pos >>> SHIFT) == ((pos + len - 1) >>> SHIFT)) {
+	    return new String(chunks.get((int)(pos >>> SHIFT)), (int)(pos & MASK), len, charset);
+	} else {
+	    byte[] data = new byte[len];
+	    get(pos, data, 0, len);
+	    return new String(data, charset);
+	}
+    }
+
+    @Override
+    public String toString() {
+	return toString(0L, (int)size, charset);
+    }
+
+    /**
+     * Get the number of lines in the buffer. A final line without a terminator is counted, an empty buffer has no lines.
+     */
+    public int getLineCount() {
+	index();
+	return lineCount;
+    }
+
+    /**
+     * Get the nth line (starting from 0), without its terminator.
+     */
+    public CharSequence getLine(int n) {
+	index();
+	if (n < 0 || n >= lineCount) {
+	    throw new IndexOutOfBoundsException(Integer.toString(n));
+	}
+	int start = lineBounds[2*n];
+	int end = lineBounds[2*n + 1];
+	if (nonAscii.get(n)) {
+	    return toString((long)start, end - start, charset);
+	} else {
+	    return new AsciiSequence(start, end);
+	}
+    }
+
+    /**
+     * Iterate over the lines in the buffer.
+     */
+    public Iterator<CharSequence> lines() {
+	index();
+	return new Iterator<CharSequence>() {
+	    private int next = 0;
+
+	    public boolean hasNext() {
+		return next < getLineCount();
+	    }
+
+	    public CharSequence next() {
+		if (hasNext()) {
+		    return getLine(next++);
+		} else {
+		    throw new NoSuchElementException();
+		}
+	    }
+
+	    public void remove() {
+		throw new UnsupportedOperationException();
+	    }
+	};
+    }
+
+    // Implement OutputStream
+
+    @Override
+    public void write(int b) {
+	byte[] chunk = ensureCapacity();
+	chunk[(int)(size++ & MASK)] = (byte)b;
+	invalidate();
+    }
+
+    @Override
+    public void write(byte[] buff, int offset, int len) {
+	if (offset < 0 || len < 0 || len > buff.length - offset) {
+	    throw new IndexOutOfBoundsException();
+	}
+	while (len > 0) {
+	    byte[] chunk = ensureCapacity(len);
+	    int ptr = (int)(size & MASK);
+	    int n = Math.min(len, chunk.length - ptr);
+	    System.arraycopy(buff, offset, chunk, ptr, n);
+	    size += n;
+	    offset += n;
+	    len -= n;
+	}
+	invalidate();
+    }
+
+    /**
+     * Copy the contents of the buffer to the OutputStream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+	long remaining = size;
+	for (byte[] chunk : chunks) {
+	    int len = (int)Math.min((long)chunk.length, remaining);
+	    out.write(chunk, 0, len);
+	    remaining -= len;
+	}
+    }
+
+    // Private
+
+    private byte[] ensureCapacity() {
+	return ensureCapacity(1);
+    }
+
+    /**
+     * Get the chunk that will receive the next byte written, making room for up to len bytes if possible.
+     */
+    private byte[] ensureCapacity(int len) {
+	int index = (int)(size >>> SHIFT);
+	int ptr = (int)(size & MASK);
+	if (index == chunks.size()) {
+	    byte[] chunk = new byte[index == 0 ? Math.min(CHUNK_SIZE, Math.max(len, 256)) : CHUNK_SIZE];
+	    chunks.add(chunk);
+	    return chunk;
+	}
+	byte[] chunk = chunks.get(index);
+	if (ptr == chunk.length) {
+	    //
+	    // Only the first chunk can be smaller than CHUNK_SIZE
+	    //
+	    int newLength = (int)Math.min((long)CHUNK_SIZE, Math.max((long)chunk.length * 2, (long)ptr + len));
+	    chunk = Arrays.copyOf(chunk, newLength);
+	    chunks.set(index, chunk);
+	}
+	return chunk;
+    }
+
+    private void invalidate() {
+	lineCount = -1;
+    }
+
+    /**
+     * Build the line index, if it is not current.
+     */
+    private void index() {
+	if (lineCount != -1) {
+	    return;
+	}
+	if (size > Integer.MAX_VALUE) {
+	    throw new UnsupportedOperationException(Long.toString(size));
+	}
+	lineBounds = new int[32];
+	nonAscii = new BitSet();
+	lineCount = 0;
+	int start = 0;
+	boolean ascii = true;
+	for (int pos=0; pos < (int)size; ) {
+	    byte[] chunk = chunks.get(pos >>> SHIFT);
+	    int ptr = pos & MASK;
+	    int end = (int)Math.min((long)chunk.length, size - (pos - ptr));
+	    for (int i=ptr; i < end; i++, pos++) {
+		byte b = chunk[i];
+		if (b == '\n') {
+		    addLine(start, pos, ascii);
+		    start = pos + 1;
+		    ascii = true;
+		} else if (b == '\r') {
+		    addLine(start, pos, ascii);
+		    if (pos + 1 < size && byteAt(pos + 1) == '\n') {
+			i++;
+			pos++;
+		    }
+		    start = pos + 1;
+		    ascii = true;
+		} else if (b < 0) {
+		    ascii = false;
+		}
+	    }
+	}
+	if (start < size) {
+	    addLine(start, (int)size, ascii);
+	}
+    }
+
+    private void addLine(int start, int end, boolean ascii) {
+	if (2*lineCount + 2 > lineBounds.length) {
+	    lineBounds = Arrays.copyOf(lineBounds, lineBounds.length * 2);
+	}
+	lineBounds[2*lineCount] = start;
+	lineBounds[2*lineCount + 1] = end;
+	if (!ascii) {
+	    nonAscii.set(lineCount);
+	}
+	lineCount++;
+    }
+
+    /**
+     * A CharSequence view of a range of ASCII bytes in the buffer.
+     */
+    class AsciiSequence implements CharSequence {
+	private int start, end;
+
+	AsciiSequence(int start, int end) {
+	    this.start = start;
+	    this.end = end;
+	}
+
+	public int length() {
+	    return end - start;
+	}
+
+	public char charAt(int index) {
+	    if (index < 0 || index >= length()) {
+		throw new IndexOutOfBoundsException(Integer.toString(index));
+	    }
+	    return (char)byteAt((long)(start + index));
+	}
+
+	public CharSequence subSequence(int from, int to) {
+	    if (from < 0 || to > length() || from > to) {
+		throw new IndexOutOfBoundsException();
+	    }
+	    return new AsciiSequence(start + from, start + to);
+	}
+
+	@Override
+	public String toString() {
+	    return ChunkedBuffer.this.toString((long)start, end - start, Strings.ASCII);
+	}
+    }
+
+    class ChunkInputStream extends InputStream {
+	private long pos = 0L, mark = 0L;
+
+	ChunkInputStream() {
+	}
+
+	@Override
+	public int read() {
+	    return pos < size ? byteAt(pos++) & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] buff, int offset, int len) {
+	    if (offset < 0 || len < 0 || len > buff.length - offset) {
+		throw new IndexOutOfBoundsException();
+	    } else if (len == 0) {
+		return 0;
+	    } else if (pos >= size) {
+		return -1;
+	    }
+	    len = (int)Math.min((long)len, size - pos);
+	    get(pos, buff, offset, len);
+	    pos += len;
+	    return len;
+	}
+
+	@Override
+	public long skip(long n) {
+	    long skipped = Math.max(0L, Math.min(n, size - pos));
+	    pos += skipped;
+	    return skipped;
+	}
+
+	@Override
+	public int available() {
+	    return (int)Math.min((long)Integer.MAX_VALUE, size - pos);
+	}
+
+	@Override
+	public boolean markSupported() {
+	    return true;
+	}
+
+	@Override
+	public void mark(int readLimit) {
+	    mark = pos;
+	}
+
+	@Override
+	public void reset() {
+	    pos = mark;
+	}
+    }
+}
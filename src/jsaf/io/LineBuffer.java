@@ -0,0 +1,266 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A reusable, growable byte buffer for assembling lines of input, which is shared by the line-reading methods of
+ * PerishableReader, SimpleReader and Streams. A LineBuffer is also a CharSequence, whose characters are its bytes (i.e.,
+ * ISO-8859-1), so ASCII lines can be examined without being decoded into a String.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class LineBuffer implements CharSequence {
+    /**
+     * A callback that receives lines from forEachLine.
+     *
+     * @since 1.7
+     */
+    public interface ILineHandler {
+	/**
+	 * Handle a line (without its terminator). The buffer is only valid for the duration of the call.
+	 *
+	 * @return false to stop reading lines
+	 *
+	 * @since 1.7
+	 */
+	boolean handle(LineBuffer line) throws IOException;
+    }
+
+    /**
+     * Read all the lines from the stream, in blocks, and pass them to the handler. Lines may be terminated by LF, CR or
+     * CRLF. Closes the stream when done.
+     *
+     * @return the number of lines that were handled
+     *
+     * @since 1.7
+     */
+    public static long forEachLine(InputStream in, ILineHandler handler) throws IOException {
+	LineBuffer line = new LineBuffer();
+	byte[] block = new byte[8192];
+	long count = 0;
+	boolean skipLF = false, more = true;
+	try {
+	    int len;
+	    while (more && (len = in.read(block)) != -1) {
+		int pos = 0;
+		if (skipLF && len > 0) {
+		    if (block[0] == '\n') {
+			pos++;
+		    }
+		    skipLF = false;
+		}
+		while (more && pos < len) {
+		    int eol = indexOfEOL(block, pos, len);
+		    if (eol == -1) {
+			line.append(block, pos, len - pos);
+			break;
+		    }
+		    line.append(block, pos, eol - pos);
+		    count++;
+		    more = handler.handle(line);
+		    line.clear();
+		    pos = eol + 1;
+		    if (block[eol] == '\r') {
+			if (pos == len) {
+			    skipLF = true;
+			} else if (block[pos] == '\n') {
+			    pos++;
+			}
+		    }
+		}
+	    }
+	    if (more && line.size() > 0) {
+		count++;
+		handler.handle(line);
+	    }
+	} finally {
+	    in.close();
+	}
+	return count;
+    }
+
+    /**
+     * Find the first CR or LF in the specified range of the array.
+     *
+     * @return the index, or -1 if there is none
+     *
+     * @since 1.7
+     */
+    public static int indexOfEOL(byte[] b, int from, int to) {
+	for (int i=from; i < to; i++) {
+	    byte ch = b[i];
+	    if (ch <= '\r' && (ch == '\n' || ch == '\r')) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Find the first occurrence of the specified byte in the specified range of the array.
+     *
+     * @return the index, or -1 if there is none
+     *
+     * @since 1.7
+     */
+    public static int indexOf(byte[] b, int from, int to, int target) {
+	byte t = (byte)target;
+	for (int i=from; i < to; i++) {
+	    if (b[i] == t) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Buffers larger than this are not retained across calls to clear.
+     */
+    static final int MAX_RETAINED = 65536;
+
+    static final int INITIAL_CAPACITY = 128;
+
+    private static final Charset ISO88591 = Charset.forName("ISO-8859-1");
+
+    private byte[] buff;
+    private int len;
+
+    public LineBuffer() {
+	buff = new byte[INITIAL_CAPACITY];
+	len = 0;
+    }
+
+    /**
+     * Empty the buffer. If it has grown very large (to accommodate a long line), its storage is released.
+     */
+    public void clear() {
+	if (buff.length > MAX_RETAINED) {
+	    buff = new byte[INITIAL_CAPACITY];
+	}
+	len = 0;
+    }
+
+    /**
+     * Get the number of bytes in the buffer.
+     */
+    public int size() {
+	return len;
+    }
+
+    /**
+     * Get the array backing the buffer. Only the first size() bytes are valid.
+     */
+    public byte[] array() {
+	return buff;
+    }
+
+    public byte byteAt(int index) {
+	if (index < 0 || index >= len) {
+	    throw new IndexOutOfBoundsException(Integer.toString(index));
+	}
+	return buff[index];
+    }
+
+    public void append(int b) {
+	if (len == buff.length) {
+	    grow(len + 1);
+	}
+	buff[len++] = (byte)b;
+    }
+
+    public void append(byte[] b, int offset, int length) {
+	if (length > 0) {
+	    if (len + length > buff.length) {
+		grow(len + length);
+	    }
+	    System.arraycopy(b, offset, buff, len, length);
+	    len += length;
+	}
+    }
+
+    /**
+     * Append the remaining bytes of the ByteBuffer, advancing its position.
+     *
+     * @since 1.7
+     */
+    public void append(ByteBuffer b) {
+	int length = b.remaining();
+	if (length > 0) {
+	    if (len + length > buff.length) {
+		grow(len + length);
+	    }
+	    b.get(buff, len, length);
+	    len += length;
+	}
+    }
+
+    /**
+     * Returns true if the last byte in the buffer is b.
+     */
+    public boolean endsWith(int b) {
+	return len > 0 && buff[len - 1] == (byte)b;
+    }
+
+    /**
+     * Discard the last n bytes in the buffer.
+     */
+    public void truncate(int n) {
+	if (n < 0 || n > len) {
+	    throw new IndexOutOfBoundsException(Integer.toString(n));
+	}
+	len -= n;
+    }
+
+    /**
+     * Copy the contents of the buffer into a new array.
+     */
+    public byte[] toByteArray() {
+	return Arrays.copyOf(buff, len);
+    }
+
+    /**
+     * Decode the contents of the buffer.
+     */
+    public String toString(Charset charset) {
+	return len == 0 ? "" : new String(buff, 0, len, charset);
+    }
+
+    // Implement CharSequence
+
+    public int length() {
+	return len;
+    }
+
+    public char charAt(int index) {
+	return (char)(byteAt(index) & 0xFF);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+	if (start < 0 || end > len || start > end) {
+	    throw new IndexOutOfBoundsException();
+	}
+	LineBuffer sub = new LineBuffer();
+	sub.append(buff, start, end - start);
+	return sub;
+    }
+
+    @Override
+    public String toString() {
+	return toString(ISO88591);
+    }
+
+    // Private
+
+    private void grow(int capacity) {
+	buff = Arrays.copyOf(buff, Math.max(capacity, buff.length << 1));
+    }
+}
@@ -5,33 +5,79 @@ package jsaf.io;
 
 import java.io.BufferedReader;
 import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.StringReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import jsaf.util.Strings;
+import jsaf.util.TaskExecutor;
 
 /**
  * A utility that iterates through lines of a stream.
 *
  * When used with a (text) file, the file is deleted when the end of the iterator has been reached. The effect makes for a
- * file-backed iterator that takes up little memory at runtime.
+ * file-backed iterator that takes up little memory at runtime. An iterator that is abandoned before it has been exhausted
+ * should be closed; otherwise, the file is deleted by the TempFiles reaper after the iterator has been garbage-collected.
  *
  * @author David A. Solin
  * @version %I% %G%
  * @since 1.3.9
  */
-public class LineIterator implements Iterator<String> {
+public class LineIterator implements Iterator<String>, Closeable {
+    /**
+     * Converts lines into records, for parse.
+     *
+     * @since 1.7
+     */
+    public interface ILineParser<T> {
+	/**
+	 * Parse a line.
+	 *
+	 * @return the record, or null if the line should be skipped
+	 *
+	 * @since 1.7
+	 */
+	T parse(String line);
+    }
+
+    /**
+     * Create a LineIterator for a text file that reads the file by memory-mapping it, if possible (see MappedLines), or
+     * otherwise using a stream (as with LineIterator(File, Charset)). When the end of the iterator has been reached, the
+     * file is deleted.
+     *
+     * @param encoding The file's character encoding. If null, encoding is detected by reading the file BOM.
+     *
+     * @since 1.7
+     */
+    public static LineIterator map(File tempFile, Charset encoding) throws IOException {
+	MappedLines lines = MappedLines.map(tempFile, encoding);
+	if (lines == null) {
+	    return new LineIterator(tempFile, encoding);
+	} else {
+	    LineIterator iter = lines.iterator();
+	    iter.setTempFile(tempFile);
+	    return iter;
+	}
+    }
+
     private File tempFile = null;
     private BufferedReader reader;
+    private MappedLines.Range range;
     private String next = null;
 
     /**
@@ -47,7 +93,21 @@ public class LineIterator implements Iterator<String> {
      */
     public LineIterator(File tempFile, Charset encoding) throws IOException {
 	this(new FileInputStream(tempFile), encoding);
-	this.tempFile = tempFile;
+	setTempFile(tempFile);
+    }
+
+    /**
+     * Create a LineIterator for an InputStream that reads from a temporary file (e.g., while the file is still being
+     * written), using the specified encoding. Auto-detects GZip-compressed data. When the end of the iterator has been
+     * reached, the file is deleted.
+     *
+     * @param encoding The stream's character encoding. If null, encoding is detected by trying to read a BOM from the stream.
+     *
+     * @since 1.7
+     */
+    public LineIterator(InputStream in, Charset encoding, File tempFile) throws IOException {
+	this(in, encoding);
+	setTempFile(tempFile);
     }
 
     /**
@@ -81,9 +141,12 @@ public class LineIterator implements Iterator<String> {
 	reader = new BufferedReader(new StringReader(data));
     }
 
-    @Override
-    protected void finalize() {
-	close();
+    /**
+     * Create a LineIterator for a range of a memory-mapped file.
+     */
+    LineIterator(MappedLines.Range range, File tempFile) {
+	this.range = range;
+	setTempFile(tempFile);
     }
 
     /**
@@ -99,9 +162,113 @@ public class LineIterator implements Iterator<String> {
 	    }
 	    reader = null;
 	}
+	range = null;
 	if (tempFile != null) {
-	    if (tempFile.delete()) {
-		tempFile = null;
+	    TempFiles.delete(tempFile);
+	    tempFile = null;
+	}
+    }
+
+    /**
+     * Returns true if the iterator reads a memory-mapped file (and can therefore be split).
+     *
+     * @since 1.7
+     */
+    public boolean isMapped() {
+	return range != null;
+    }
+
+    /**
+     * Get an estimate of the amount of data remaining: for an iterator over a memory-mapped file, the number of bytes
+     * remaining, otherwise Long.MAX_VALUE (unknown).
+     *
+     * @since 1.7
+     */
+    public long estimateSize() {
+	return range == null ? Long.MAX_VALUE : range.estimateSize();
+    }
+
+    /**
+     * Split off an iterator over the first (roughly) half of the remaining lines, leaving this iterator with the rest. Only
+     * iterators over memory-mapped files (see map) can be split. The contract is that of java.util.Spliterator.trySplit
+     * (for an ORDERED spliterator), so that on Java 8 a splittable LineIterator is easily adapted to a parallel Stream.
+     *
+     * @return null if the iterator cannot be split
+     *
+     * @since 1.7
+     */
+    public LineIterator trySplit() {
+	if (range == null || next != null) {
+	    return null;
+	}
+	MappedLines.Range prefix = range.trySplit();
+	return prefix == null ? null : new LineIterator(prefix, null);
+    }
+
+    /**
+     * Parse the remaining lines in parallel. The iterator is split repeatedly, into at most parallelism parts, which are
+     * parsed concurrently by tasks on the TaskExecutor (and the calling thread). The records are returned in the order of
+     * the lines from which they were parsed. An iterator that cannot be split is simply parsed by the calling thread.
+     *
+     * @param parser a parser, which must be thread-safe
+     *
+     * @since 1.7
+     */
+    public <T> List<T> parse(final ILineParser<T> parser, int parallelism) throws IOException {
+	List<LineIterator> parts = new ArrayList<LineIterator>();
+	parts.add(this);
+	while (parts.size() < parallelism) {
+	    int largest = 0;
+	    for (int i=1; i < parts.size(); i++) {
+		if (parts.get(i).estimateSize() > parts.get(largest).estimateSize()) {
+		    largest = i;
+		}
+	    }
+	    LineIterator prefix = parts.get(largest).trySplit();
+	    if (prefix == null) {
+		break;
+	    }
+	    parts.add(largest, prefix);
+	}
+	List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>();
+	for (int i=1; i < parts.size(); i++) {
+	    final LineIterator part = parts.get(i);
+	    futures.add(TaskExecutor.getInstance().submit(new Callable<List<T>>() {
+		public List<T> call() {
+		    return parseAll(part, parser);
+		}
+	    }));
+	}
+	boolean joined = false;
+	try {
+	    List<T> result = parseAll(parts.get(0), parser);
+	    if (Thread.interrupted()) {
+		throw new InterruptedIOException();
+	    }
+	    for (Future<List<T>> future : futures) {
+		result.addAll(future.get());
+	    }
+	    joined = true;
+	    return result;
+	} catch (InterruptedException e) {
+	    throw new InterruptedIOException();
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof RuntimeException) {
+		throw (RuntimeException)cause;
+	    } else if (cause instanceof Error) {
+		throw (Error)cause;
+	    } else {
+		throw new IOException(cause);
+	    }
+	} finally {
+	    if (!joined) {
+		//
+		// Stop the tasks that are still parsing (or waiting to parse) the other parts
+		//
+		for (Future<List<T>> future : futures) {
+		    future.cancel(true);
+		}
 	    }
 	}
     }
@@ -125,9 +292,9 @@ public class LineIterator implements Iterator<String> {
     public String next() throws NoSuchElementException {
 	if (next == null) {
 	    try {
-		if (reader == null) {
+		if (reader == null && range == null) {
 		    throw new NoSuchElementException(); // previously closed
-		} else if ((next = reader.readLine()) == null) {
+		} else if ((next = range == null ? reader.readLine() : range.readLine()) == null) {
 		    close();
 		    throw new NoSuchElementException();
 		}
@@ -146,6 +313,30 @@ public class LineIterator implements Iterator<String> {
 
     // Private
 
+    /**
+     * Set the file to be deleted when the iterator is closed.
+     */
+    private void setTempFile(File tempFile) {
+	this.tempFile = tempFile;
+	if (tempFile != null) {
+	    TempFiles.register(tempFile, this);
+	}
+    }
+
+    private static <T> List<T> parseAll(LineIterator iter, ILineParser<T> parser) {
+	List<T> records = new ArrayList<T>();
+	//
+	// A cancelled task stops at the next line (its partial result is discarded)
+	//
+	while (!Thread.currentThread().isInterrupted() && iter.hasNext()) {
+	    T record = parser.parse(iter.next());
+	    if (record != null) {
+		records.add(record);
+	    }
+	}
+	return records;
+    }
+
     private static final byte[] GZIP_MAGIC = new byte[] {(byte)0x1f, (byte)0x8b};
 
     /**
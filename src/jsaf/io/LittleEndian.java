@@ -110,9 +110,13 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final short readShort(InputStream in) throws IOException {
-	byte[] buff = new byte[2];
-	Streams.readFully(in, buff);
-	return getShort(buff, 0);
+	byte[] buff = BufferPool.borrow(2);
+	try {
+	    Streams.readFully(in, buff, 0, 2);
+	    return getShort(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
@@ -121,18 +125,26 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final short readUShort(InputStream in) throws IOException {
-	byte[] buff = new byte[2];
-	Streams.readFully(in, buff);
-	return getUShort(buff, 0);
+	byte[] buff = BufferPool.borrow(2);
+	try {
+	    Streams.readFully(in, buff, 0, 2);
+	    return getUShort(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
      * @since 1.0
      */
     public static final short readUShort(IRandomAccess ra) throws IOException {
-	byte[] buff = new byte[2];
-	ra.readFully(buff);
-	return getUShort(buff, 0);
+	byte[] buff = BufferPool.borrow(2);
+	try {
+	    readFully(ra, buff, 2);
+	    return getUShort(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
@@ -184,9 +196,13 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final int readInt(InputStream in) throws IOException {
-	byte[] buff = new byte[4];
-	Streams.readFully(in, buff);
-	return getInt(buff, 0);
+	byte[] buff = BufferPool.borrow(4);
+	try {
+	    Streams.readFully(in, buff, 0, 4);
+	    return getInt(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
@@ -195,18 +211,26 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final int readUInt(InputStream in) throws IOException {
-	byte[] buff = new byte[4];
-	Streams.readFully(in, buff);
-	return getUInt(buff, 0);
+	byte[] buff = BufferPool.borrow(4);
+	try {
+	    Streams.readFully(in, buff, 0, 4);
+	    return getUInt(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
      * @since 1.0
      */
     public static final int readUInt(IRandomAccess ra) throws IOException {
-	byte[] buff = new byte[4];
-	ra.readFully(buff);
-	return getUInt(buff, 0);
+	byte[] buff = BufferPool.borrow(4);
+	try {
+	    readFully(ra, buff, 4);
+	    return getUInt(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
@@ -250,9 +274,13 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final long readLong(InputStream in) throws IOException {
-	byte[] buff = new byte[8];
-	Streams.readFully(in, buff);
-	return getLong(buff, 0);
+	byte[] buff = BufferPool.borrow(8);
+	try {
+	    Streams.readFully(in, buff, 0, 8);
+	    return getLong(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
@@ -261,9 +289,13 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final long readULong(IRandomAccess ra) throws IOException {
-	byte[] buff = new byte[8];
-	ra.readFully(buff);
-	return getULong(buff, 0);
+	byte[] buff = BufferPool.borrow(8);
+	try {
+	    readFully(ra, buff, 8);
+	    return getULong(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
@@ -272,9 +304,13 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final long readULong(InputStream in) throws IOException {
-	byte[] buff = new byte[8];
-	Streams.readFully(in, buff);
-	return getULong(buff, 0);
+	byte[] buff = BufferPool.borrow(8);
+	try {
+	    Streams.readFully(in, buff, 0, 8);
+	    return getULong(buff, 0);
+	} finally {
+	    BufferPool.release(buff);
+	}
     }
 
     /**
@@ -322,34 +358,12 @@ public class LittleEndian {
      * @since 1.0
      */
     public static final String readSzUTF16LEString(IRandomAccess ra) throws IOException {
-	byte[] buff = new byte[512];
-	int len = 0;
-	while (true) {
-	    int b1 = ra.read();
-	    if (b1 == -1) {
-		throw new EOFException(Message.getMessage(Message.ERROR_EOF));
-	    }
-	    int b2 = ra.read();
-	    if (b2 == -1) {
-		throw new EOFException(Message.getMessage(Message.ERROR_EOF));
-	    }
-
-	    if (b1 == 0 && b2 == 0) {
-		break; // Reached the null!
-	    } else if (len < buff.length) {
-		buff[len++] = (byte)(0xFF & b1);
-		buff[len++] = (byte)(0xFF & b2);
-	    } else {
-		byte[] buff2 = new byte[buff.length + 512];
-		for (int i=0; i < buff.length; i++) {
-		    buff2[i] = buff[i];
-		}
-		buff = buff2;
-		buff[len++] = (byte)(0xFF & b1);
-		buff[len++] = (byte)(0xFF & b2);
-	    }
+	byte[] buff = BufferPool.borrow(512);
+	try {
+	    return readSzUTF16LEString(ra, buff);
+	} finally {
+	    BufferPool.release(buff);
 	}
-	return getSzUTF16LEString(buff, 0, len);
     }
 
     /**
@@ -394,4 +408,52 @@ public class LittleEndian {
 	ra.readFully(buff);
 	return buff;
     }
+
+    // Private
+
+    /**
+     * Read a null-terminated string, using buff as scratch space (growing it if necessary).
+     */
+    private static String readSzUTF16LEString(IRandomAccess ra, byte[] buff) throws IOException {
+	int len = 0;
+	while (true) {
+	    int b1 = ra.read();
+	    if (b1 == -1) {
+		throw new EOFException(Message.getMessage(Message.ERROR_EOF));
+	    }
+	    int b2 = ra.read();
+	    if (b2 == -1) {
+		throw new EOFException(Message.getMessage(Message.ERROR_EOF));
+	    }
+
+	    if (b1 == 0 && b2 == 0) {
+		break; // Reached the null!
+	    } else if (len < buff.length) {
+		buff[len++] = (byte)(0xFF & b1);
+		buff[len++] = (byte)(0xFF & b2);
+	    } else {
+		byte[] buff2 = new byte[buff.length + 512];
+		for (int i=0; i < buff.length; i++) {
+		    buff2[i] = buff[i];
+		}
+		buff = buff2;
+		buff[len++] = (byte)(0xFF & b1);
+		buff[len++] = (byte)(0xFF & b2);
+	    }
+	}
+	return getSzUTF16LEString(buff, 0, len);
+    }
+
+    /**
+     * Read exactly len bytes into the beginning of buff.
+     */
+    private static void readFully(IRandomAccess ra, byte[] buff, int len) throws IOException {
+	for (int offset=0; offset < len; ) {
+	    int n = ra.read(buff, offset, len - offset);
+	    if (n == -1) {
+		throw new EOFException(Message.getMessage(Message.ERROR_EOF));
+	    }
+	    offset += n;
+	}
+    }
 }
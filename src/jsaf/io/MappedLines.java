@@ -0,0 +1,273 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jsaf.util.Strings;
+
+/**
+ * A memory-mapped text file, whose lines are found by scanning the mapped bytes for line terminators (LF, CR or CRLF), and
+ * which are only decoded when they are read. The file can be split into ranges at line boundaries, which can be read
+ * concurrently by different threads.
+ *
+ * Only uncompressed files in encodings in which CR and LF are single bytes (e.g., UTF-8, US-ASCII and ISO-8859-x) can be
+ * mapped.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class MappedLines {
+    /**
+     * Map a file, if possible.
+     *
+     * @param encoding The file's character encoding. If null, encoding is detected by looking for a BOM; if there is no BOM,
+     *                 the file is assumed to be UTF-8.
+     *
+     * @return null if the file is compressed or its encoding is not supported
+     */
+    public static MappedLines map(File file, Charset encoding) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    long size = channel.size();
+	    byte[] head = new byte[(int)Math.min(3L, size)];
+	    raf.readFully(head);
+	    long start = 0L;
+	    if (head.length >= 2 && head[0] == (byte)0x1f && head[1] == (byte)0x8b) {
+		return null; // GZIP
+	    } else if (encoding == null) {
+		if (head.length == 3 && head[0] == (byte)0xEF && head[1] == (byte)0xBB && head[2] == (byte)0xBF) {
+		    start = 3L;
+		} else if (head.length >= 2 && ((head[0] == (byte)0xFE && head[1] == (byte)0xFF) ||
+						(head[0] == (byte)0xFF && head[1] == (byte)0xFE))) {
+		    return null; // UTF-16
+		}
+		encoding = Strings.UTF8;
+	    } else if (!Arrays.equals(CRLF, "\r\n".getBytes(encoding))) {
+		return null;
+	    }
+	    int count = (int)((size + SpillBuffer.REGION_SIZE - 1) / SpillBuffer.REGION_SIZE);
+	    ByteBuffer[] regions = new ByteBuffer[count];
+	    for (int i=0; i < count; i++) {
+		long pos = i * SpillBuffer.REGION_SIZE;
+		regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(SpillBuffer.REGION_SIZE, size - pos));
+	    }
+	    return new MappedLines(regions, start, size, encoding);
+	} finally {
+	    raf.close();
+	}
+    }
+
+    /**
+     * Ranges smaller than this are not split.
+     */
+    static final long MIN_SPLIT = 65536L;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private ByteBuffer[] regions;
+    private long start, size;
+    private Charset charset;
+
+    /**
+     * Get the size of the file.
+     */
+    public long size() {
+	return size;
+    }
+
+    /**
+     * Get the character encoding of the file.
+     */
+    public Charset getCharset() {
+	return charset;
+    }
+
+    /**
+     * Get an iterator over all the lines in the file.
+     */
+    public LineIterator iterator() {
+	return new LineIterator(new Range(start, size), null);
+    }
+
+    /**
+     * Split the file into (at most) n ranges of roughly equal size, each of which begins at the start of a line.
+     */
+    public List<Range> split(int n) {
+	if (n < 1) {
+	    throw new IllegalArgumentException(Integer.toString(n));
+	}
+	List<Range> ranges = new ArrayList<Range>();
+	long from = start;
+	long len = size - start;
+	for (int i=1; i < n; i++) {
+	    long target = start + len * i / n;
+	    if (target >= from) {
+		long boundary = nextLineStart(target);
+		if (boundary >= size) {
+		    break;
+		} else if (boundary > from) {
+		    ranges.add(new Range(from, boundary));
+		    from = boundary;
+		}
+	    }
+	}
+	ranges.add(new Range(from, size));
+	return ranges;
+    }
+
+    /**
+     * A range of lines in the file. A Range is not thread-safe, but different ranges of the same file can be read by
+     * different threads.
+     */
+    public class Range {
+	private long begin, end, pos;
+	private ByteBuffer[] views;
+	private LineBuffer line;
+
+	Range(long begin, long end) {
+	    this.begin = begin;
+	    this.end = end;
+	    pos = begin;
+	    views = new ByteBuffer[regions.length];
+	    for (int i=0; i < views.length; i++) {
+		views[i] = regions[i].duplicate();
+	    }
+	    line = new LineBuffer();
+	}
+
+	/**
+	 * Get the offset of the start of the range in the file.
+	 */
+	public long getStart() {
+	    return begin;
+	}
+
+	/**
+	 * Get the offset of the end of the range (exclusive) in the file.
+	 */
+	public long getEnd() {
+	    return end;
+	}
+
+	/**
+	 * Get the number of bytes remaining in the range.
+	 */
+	public long estimateSize() {
+	    return end - pos;
+	}
+
+	/**
+	 * Split off the first (roughly) half of the remaining lines into a new Range, which is returned; this Range is left
+	 * with the rest. (This follows the contract of java.util.Spliterator.trySplit for an ORDERED spliterator.)
+	 *
+	 * @return null if the remainder of the range is too small to be split
+	 */
+	public Range trySplit() {
+	    if (end - pos < MIN_SPLIT) {
+		return null;
+	    }
+	    long boundary = nextLineStart(pos + (end - pos) / 2);
+	    if (boundary >= end) {
+		return null;
+	    }
+	    Range prefix = new Range(pos, boundary);
+	    begin = boundary;
+	    pos = boundary;
+	    return prefix;
+	}
+
+	/**
+	 * Get an iterator over the lines in the range.
+	 */
+	public LineIterator iterator() {
+	    return new LineIterator(this, null);
+	}
+
+	/**
+	 * Read and decode the next line in the range (without its terminator).
+	 *
+	 * @return null if the end of the range has been reached
+	 */
+	public String readLine() {
+	    if (pos >= end) {
+		return null;
+	    }
+	    line.clear();
+	    while (true) {
+		int index = (int)(pos / SpillBuffer.REGION_SIZE);
+		long base = index * SpillBuffer.REGION_SIZE;
+		ByteBuffer view = views[index];
+		int from = (int)(pos - base);
+		int to = (int)(Math.min(end, base + view.capacity()) - base);
+		int i = from;
+		byte b = 0;
+		while (i < to && (b = view.get(i)) != '\n' && b != '\r') {
+		    i++;
+		}
+		if (i > from) {
+		    view.limit(i);
+		    view.position(from);
+		    line.append(view);
+		    view.clear();
+		}
+		pos = base + i;
+		if (i < to) {
+		    pos++;
+		    if (b == '\r' && pos < end && byteAt(pos) == '\n') {
+			pos++;
+		    }
+		    break;
+		} else if (pos >= end) {
+		    break;
+		}
+	    }
+	    return line.toString(charset);
+	}
+
+	// Private
+
+	private byte byteAt(long offset) {
+	    return views[(int)(offset / SpillBuffer.REGION_SIZE)].get((int)(offset % SpillBuffer.REGION_SIZE));
+	}
+    }
+
+    // Private
+
+    private MappedLines(ByteBuffer[] regions, long start, long size, Charset charset) {
+	this.regions = regions;
+	this.start = start;
+	this.size = size;
+	this.charset = charset;
+    }
+
+    /**
+     * Find the offset of the start of the first line that begins after the specified offset.
+     */
+    private long nextLineStart(long offset) {
+	for (long pos=offset; pos < size; pos++) {
+	    byte b = byteAt(pos);
+	    if (b == '\n') {
+		return pos + 1;
+	    } else if (b == '\r') {
+		return pos + 1 < size && byteAt(pos + 1) == '\n' ? pos + 2 : pos + 1;
+	    }
+	}
+	return size;
+    }
+
+    private byte byteAt(long offset) {
+	return regions[(int)(offset / SpillBuffer.REGION_SIZE)].get((int)(offset % SpillBuffer.REGION_SIZE));
+    }
+}
@@ -16,16 +16,15 @@ import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import jsaf.JSAFSystem;
 import jsaf.Message;
 import jsaf.intf.io.IReader;
+import jsaf.intf.util.IScheduledTask;
 import jsaf.util.Strings;
+import jsaf.util.TaskExecutor;
 import org.slf4j.cal10n.LocLogger;
 
 /**
@@ -36,9 +35,13 @@ import org.slf4j.cal10n.LocLogger;
  */
 public class PerishableReader extends InputStream implements IReader {
 
-  private static final ExecutorService service = Executors.newCachedThreadPool(new PRThreadFactory());
   private static final HashSet<String> interruptableTypeNames = new HashSet<String>();
 
+  /**
+   * The size of the read-ahead window. Each fill of the window is covered by a single timed read of the underlying stream.
+   */
+  static final int WINDOW_SIZE = 8192;
+
   static {
     interruptableTypeNames.add("java.net.SocketInputStream");
   }
@@ -69,8 +72,9 @@ public class PerishableReader extends InputStream implements IReader {
    *
    * If an InputStream type is known to have interruptable reads, then a PerishableReader will use TimerTasks and interrupts
    * to implement the timeout functionality. This is fairly low-cost. If an InputStream is not known to have interruptable
-   * reads, then a PerishableReader will use Futures to implement the timeout functionality. This means every read operation
-   * will have to run in a new Thread, which is fairly high-cost.
+   * reads, then a PerishableReader will use Futures to implement the timeout functionality. This means every read of the
+   * underlying stream will have to run in another Thread (from the shared TaskExecutor), which is fairly high-cost. To
+   * amortize that cost, data is read from the underlying stream in blocks of up to WINDOW_SIZE bytes.
    *
    * By default, PerishableReader knows only about java.net.SocketInputStream.
    */
@@ -86,6 +90,17 @@ public class PerishableReader extends InputStream implements IReader {
   protected Buffer buffer;
   protected boolean isEOF;
 
+  /**
+   * Read-ahead window, holding bytes that have been read from the underlying stream but not yet consumed.
+   */
+  private byte[] window;
+  private int winPos, winLen;
+
+  /**
+   * Reusable storage for assembling lines.
+   */
+  private LineBuffer line;
+
   /**
    * Check whether a read has expired.
    *
@@ -138,7 +153,7 @@ public class PerishableReader extends InputStream implements IReader {
     if (buffer.hasNext()) {
       buffered = buffer.len - buffer.pos;
     }
-    return buffered + in.available();
+    return buffered + (winLen - winPos) + in.available();
   }
 
   @Override
@@ -160,11 +175,11 @@ public class PerishableReader extends InputStream implements IReader {
   }
 
   public boolean checkClosed() {
-    return buffer.hasNext() ? false : closed;
+    return hasPending() ? false : closed;
   }
 
   public boolean checkEOF() {
-    return buffer.hasNext() ? false : isEOF;
+    return hasPending() ? false : isEOF;
   }
 
   public synchronized String readLine() throws IOException {
@@ -172,35 +187,63 @@ public class PerishableReader extends InputStream implements IReader {
   }
 
   public synchronized String readLine(Charset charset) throws IOException {
-    ByteArrayOutputStream buff = new ByteArrayOutputStream();
-    String result = null;
+    if (line == null) {
+      line = new LineBuffer();
+    }
+    String result = readLine(line) ? line.toString(charset) : null;
+    line.clear();
+    return result;
+  }
+
+  /**
+   * Read a line (without its terminator) into the supplied buffer, which is cleared first. Lines may be terminated by LF,
+   * CR or CRLF. Unlike readLine(Charset), this does not allocate a String for the line.
+   *
+   * @return false if the end of the stream was reached before any data was read
+   *
+   * @since 1.7
+   */
+  public synchronized boolean readLine(LineBuffer line) throws IOException {
+    line.clear();
     int ch = 0;
-    while (result == null && (ch = read()) != -1) {
+    while (true) {
+      if (!buffer.hasNext() && !buffer.hasCapacity()) {
+        //
+        // No mark is active, so scan the window directly for the end of the line.
+        //
+        if (winPos == winLen && (isEOF || !fill())) {
+          break;
+        }
+        int end = LineBuffer.indexOfEOL(window, winPos, winLen);
+        if (end == -1) {
+          line.append(window, winPos, winLen - winPos);
+          winPos = winLen;
+          continue;
+        }
+        line.append(window, winPos, end - winPos);
+        winPos = end;
+        ch = window[winPos++];
+      } else if ((ch = read()) == -1) {
+        break;
+      }
       switch (ch) {
         case '\n':
-          result = new String(buff.toByteArray(), charset);
-          break;
+          return true;
 
         case '\r':
           mark(1);
           if (read() != '\n') {
             reset();
           }
-          result = new String(buff.toByteArray(), charset);
-          break;
+          return true;
 
         default:
-          buff.write((byte) ch);
+          line.append(ch);
           break;
       }
     }
-    if (result == null) {
-      isEOF = true;
-      if (buff.size() > 0) {
-        result = new String(buff.toByteArray(), charset);
-      }
-    }
-    return result;
+    isEOF = true;
+    return line.size() > 0;
   }
 
   public synchronized void readFully(byte[] buff) throws IOException {
@@ -208,15 +251,14 @@ public class PerishableReader extends InputStream implements IReader {
   }
 
   public synchronized void readFully(byte[] buff, int offset, int len) throws IOException {
-    int end = offset + len;
-    for (int i = offset; i < end; i++) {
-      int ch = read();
-      if (ch == -1) {
+    while (len > 0) {
+      int bytesRead = read(buff, offset, len);
+      if (bytesRead == -1) {
         isEOF = true;
         throw new EOFException(Message.getMessage(Message.ERROR_EOS));
-      } else {
-        buff[i] = (byte) (ch & 0xFF);
       }
+      offset += bytesRead;
+      len -= bytesRead;
     }
   }
 
@@ -243,9 +285,13 @@ public class PerishableReader extends InputStream implements IReader {
       } catch (EOFException e) {
         reset();
         int len = 0;
-        buff = new byte[512];
-        while ((len = read(buff)) > 0) {
-          out.write(buff, 0, len);
+        buff = BufferPool.borrow(512);
+        try {
+          while ((len = read(buff)) > 0) {
+            out.write(buff, 0, len);
+          }
+        } finally {
+          BufferPool.release(buff);
         }
         break;
       }
@@ -254,28 +300,22 @@ public class PerishableReader extends InputStream implements IReader {
   }
 
   public synchronized byte[] readUntil(int delim) throws IOException {
-    int ch = 0, len = 0;
-    byte[] buff = new byte[512];
-    while ((ch = read()) != -1 && ch != delim) {
-      if (len == buff.length) {
-        byte[] old = buff;
-        buff = new byte[old.length + 512];
-        for (int i = 0; i < old.length; i++) {
-          buff[i] = old[i];
-        }
-        old = null;
-      }
-      buff[len++] = (byte) (ch & 0xFF);
+    if (line == null) {
+      line = new LineBuffer();
     }
-    if (ch == -1 && len == 0) {
-      isEOF = true;
-      return null;
-    } else {
-      byte[] result = new byte[len];
-      for (int i = 0; i < len; i++) {
-        result[i] = buff[i];
+    try {
+      int ch = 0;
+      while ((ch = read()) != -1 && ch != delim) {
+        line.append(ch);
+      }
+      if (ch == -1 && line.size() == 0) {
+        isEOF = true;
+        return null;
+      } else {
+        return line.toByteArray();
       }
-      return result;
+    } finally {
+      line.clear();
     }
   }
 
@@ -288,38 +328,55 @@ public class PerishableReader extends InputStream implements IReader {
   public synchronized int read(byte[] buff, int offset, int len) throws IOException {
     if (offset < 0 || len < 0 || len > buff.length - offset) {
       throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
     }
-    int bufferBytesRead = 0;
-    while (buffer.hasNext() && bufferBytesRead < len) {
+    int bytesRead = 0;
+    while (buffer.hasNext() && bytesRead < len) {
       buff[offset++] = buffer.next();
-      bufferBytesRead++;
+      bytesRead++;
     }
-    int streamBytesRead = streamRead(buff, offset, len - bufferBytesRead);
-    if (streamBytesRead == -1) {
-      return bufferBytesRead == 0 ? -1 : bufferBytesRead;
-    } else {
-      int bytesRead = bufferBytesRead + streamBytesRead;
-      int end = offset + bytesRead;
-      for (int i = offset; buffer.hasCapacity() && i < end; i++) {
-        buffer.add((byte) (i & 0xFF));
+    if (bytesRead == len) {
+      return bytesRead;
+    }
+    if (winPos == winLen) {
+      if (bytesRead > 0 || isEOF) {
+        //
+        // Don't block for more data if the request was partially satisfied from the mark buffer
+        //
+        return bytesRead == 0 ? -1 : bytesRead;
+      } else if (len >= WINDOW_SIZE && !buffer.hasCapacity()) {
+        //
+        // Large read with no active mark: bypass the window
+        //
+        buffer.clear();
+        int streamBytesRead = streamRead(buff, offset, len);
+        if (streamBytesRead == -1) {
+          isEOF = true;
+        }
+        return streamBytesRead;
+      } else if (!fill()) {
+        return -1;
       }
-      return bufferBytesRead == 0 ? streamBytesRead : bytesRead;
     }
+    int n = Math.min(len - bytesRead, winLen - winPos);
+    System.arraycopy(window, winPos, buff, offset, n);
+    record(window, winPos, n);
+    winPos += n;
+    return bytesRead + n;
   }
 
   @Override
   public synchronized int read() throws IOException {
     int i = -1;
     if (buffer.hasNext()) {
-      i = (int) buffer.next();
-    } else if (!isEOF) {
-      i = streamRead();
-      if (i != -1) {
-        if (buffer.hasCapacity()) {
-          buffer.add((byte) (i & 0xFF));
-        } else {
-          buffer.clear(); // buffer overflow
-        }
+      i = buffer.next() & 0xFF;
+    } else if (winPos < winLen || (!isEOF && fill())) {
+      i = window[winPos++] & 0xFF;
+      if (buffer.hasCapacity()) {
+        buffer.add((byte) i);
+      } else {
+        buffer.clear(); // buffer overflow
       }
     }
     if (i == -1) {
@@ -341,6 +398,9 @@ public class PerishableReader extends InputStream implements IReader {
       closed = false;
       expired = false;
       buffer = new Buffer(0);
+      window = new byte[WINDOW_SIZE];
+      winPos = 0;
+      winLen = 0;
     }
     setTimeout(timeout);
   }
@@ -352,14 +412,15 @@ public class PerishableReader extends InputStream implements IReader {
    */
   protected int streamRead() throws IOException {
     if (interruptable) {
-      InterruptTask task = new InterruptTask(Thread.currentThread());
-      JSAFSystem.schedule(task, timeout);
-      int ch = in.read();
-      JSAFSystem.cancelTask(task);
-      return ch;
+      IScheduledTask task = JSAFSystem.scheduleTask(new InterruptTask(Thread.currentThread()), timeout);
+      try {
+        return in.read();
+      } finally {
+        task.cancel();
+      }
     } else {
       try {
-        return service.submit(new ReadTask(in)).get(timeout, TimeUnit.MILLISECONDS);
+        return TaskExecutor.getInstance().submit(new ReadTask(in)).get(timeout, TimeUnit.MILLISECONDS);
       } catch (ExecutionException e) {
         Throwable cause = e.getCause();
         if (cause instanceof IOException) {
@@ -394,15 +455,25 @@ public class PerishableReader extends InputStream implements IReader {
       throw new IndexOutOfBoundsException();
     }
     if (interruptable) {
-      InterruptTask task = new InterruptTask(Thread.currentThread());
-      JSAFSystem.schedule(task, timeout);
-      int bytesRead = in.read(buff, offset, len);
-      JSAFSystem.cancelTask(task);
-      isEOF = bytesRead == -1;
-      return bytesRead;
+      IScheduledTask task = JSAFSystem.scheduleTask(new InterruptTask(Thread.currentThread()), timeout);
+      try {
+        int bytesRead = in.read(buff, offset, len);
+        isEOF = bytesRead == -1;
+        return bytesRead;
+      } finally {
+        task.cancel();
+      }
     } else {
       try {
-        int bytesRead = service.submit(new ReadTask(in, buff, offset, len)).get(timeout, TimeUnit.MILLISECONDS);
+        //
+        // The task reads into a buffer of its own, which is only copied into the caller's buffer if the read completes in
+        // time, so that an abandoned read cannot overwrite the caller's data later.
+        //
+        ReadTask task = new ReadTask(in, new byte[Math.min(len, buff.length - offset)], 0, len);
+        int bytesRead = TaskExecutor.getInstance().submit(task).get(timeout, TimeUnit.MILLISECONDS);
+        if (bytesRead > 0) {
+          System.arraycopy(task.buff, 0, buff, offset, bytesRead);
+        }
         isEOF = bytesRead == -1;
         return bytesRead;
       } catch (ExecutionException e) {
@@ -424,6 +495,48 @@ public class PerishableReader extends InputStream implements IReader {
 
   // Private
 
+  /**
+   * Returns true if there are bytes that have been read from the underlying stream, but not yet consumed.
+   */
+  private boolean hasPending() {
+    return buffer.hasNext() || winPos < winLen;
+  }
+
+  /**
+   * Refill the (empty) window using a single timed read of the underlying stream.
+   *
+   * @return false if the end of the stream has been reached
+   */
+  private boolean fill() throws IOException {
+    winPos = 0;
+    winLen = 0;
+    int bytesRead = 0;
+    while (bytesRead == 0) {
+      bytesRead = streamRead(window, 0, window.length);
+    }
+    if (bytesRead == -1) {
+      isEOF = true;
+      return false;
+    }
+    winLen = bytesRead;
+    return true;
+  }
+
+  /**
+   * Record bytes consumed from the window in the mark buffer, if a mark is active.
+   */
+  private void record(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      if (buffer.hasCapacity()) {
+        buffer.add(bytes[i]);
+      } else {
+        buffer.clear(); // buffer overflow
+        break;
+      }
+    }
+  }
+
   /**
    * Determine whether the specified InputStream is (or wraps) an interruptable type.
    */
@@ -442,26 +555,6 @@ public class PerishableReader extends InputStream implements IReader {
     }
   }
 
-  static class PRThreadFactory implements ThreadFactory {
-
-    private final ThreadGroup group;
-    private int counter = 0;
-
-    PRThreadFactory() {
-      group = new ThreadGroup("PerishableReader Thread Group");
-    }
-
-    // Implement ThreadFactory
-
-    public synchronized Thread newThread(Runnable r) {
-      String name = new StringBuffer("perishable-reader-").append(Integer.toString(counter++)).toString();
-      Thread t = new Thread(group, r, name);
-      t.setDaemon(true);
-      return t;
-    }
-
-  }
-
   static class InterruptTask implements Runnable {
 
     private Thread t;
@@ -0,0 +1,175 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jsaf.JSAFSystem;
+import jsaf.intf.util.IScheduledTask;
+import jsaf.intf.util.Progress;
+import jsaf.util.Publisher;
+
+/**
+ * Rolls up the progress of all the concurrent transfers made through ProgressInputStream and ProgressOutputStream into a
+ * single stream of Progress.UPDATE events, whose arguments are Samples. A sample is published at a fixed interval while
+ * there are subscribers and transfers in progress (or data has been transferred since the last sample).
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class ProgressAggregator extends Publisher<Progress> {
+    /**
+     * The interval at which the shared aggregator publishes samples, in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL = 1000L;
+
+    private static ProgressAggregator instance;
+
+    /**
+     * Get the shared aggregator, to which all progress streams report.
+     */
+    public static synchronized ProgressAggregator getInstance() {
+	if (instance == null) {
+	    instance = new ProgressAggregator(DEFAULT_INTERVAL);
+	}
+	return instance;
+    }
+
+    private AtomicInteger active;
+    private AtomicLong completed, bytes, activeBytes, activeLength;
+    private long lastBytes, lastTime;
+    private volatile long rate;
+    private IScheduledTask task;
+
+    /**
+     * Create an aggregator that publishes a sample at the specified interval (in milliseconds).
+     */
+    public ProgressAggregator(long interval) {
+	super("Progress Aggregator");
+	active = new AtomicInteger(0);
+	completed = new AtomicLong(0);
+	bytes = new AtomicLong(0);
+	activeBytes = new AtomicLong(0);
+	activeLength = new AtomicLong(0);
+	lastBytes = 0L;
+	lastTime = System.currentTimeMillis();
+	rate = 0L;
+	task = JSAFSystem.scheduleTask(new Runnable() {
+	    public void run() {
+		sample();
+	    }
+	}, interval, interval);
+    }
+
+    /**
+     * Get the number of transfers in progress.
+     */
+    public int getActiveCount() {
+	return active.get();
+    }
+
+    /**
+     * Get the number of transfers that have finished.
+     */
+    public long getCompletedCount() {
+	return completed.get();
+    }
+
+    /**
+     * Get the total number of bytes transferred.
+     */
+    public long getTotalBytes() {
+	return bytes.get();
+    }
+
+    /**
+     * Get the throughput over the last sampling interval, in bytes per second.
+     */
+    public long getBytesPerSecond() {
+	return rate;
+    }
+
+    /**
+     * An aggregate progress update. The percentage is that of the transfers in progress (whose lengths are known), and the
+     * number of bytes is the total number of bytes transferred.
+     */
+    public static class Sample extends Progress.Update {
+	private int activeCount;
+	private long completedCount, bytesPerSecond;
+
+	Sample(short percent, long bytesRead, int activeCount, long completedCount, long bytesPerSecond) {
+	    super(percent, bytesRead);
+	    this.activeCount = activeCount;
+	    this.completedCount = completedCount;
+	    this.bytesPerSecond = bytesPerSecond;
+	}
+
+	public int getActiveCount() {
+	    return activeCount;
+	}
+
+	public long getCompletedCount() {
+	    return completedCount;
+	}
+
+	public long getBytesPerSecond() {
+	    return bytesPerSecond;
+	}
+    }
+
+    // Implement IDisposable
+
+    @Override
+    public void dispose() {
+	task.cancel();
+	super.dispose();
+    }
+
+    // Internal
+
+    void started(long length) {
+	active.incrementAndGet();
+	if (length > 0) {
+	    activeLength.addAndGet(length);
+	}
+    }
+
+    /**
+     * Record the transfer of len bytes, by a transfer of the specified length (or -1 if it is unknown).
+     */
+    void transferred(long len, long length) {
+	bytes.addAndGet(len);
+	if (length > 0) {
+	    activeBytes.addAndGet(len);
+	}
+    }
+
+    void finished(long length, long transferred) {
+	active.decrementAndGet();
+	if (length > 0) {
+	    activeLength.addAndGet(-length);
+	    activeBytes.addAndGet(-transferred);
+	}
+	completed.incrementAndGet();
+    }
+
+    // Private
+
+    private void sample() {
+	long now = System.currentTimeMillis();
+	long total = bytes.get();
+	long delta = total - lastBytes;
+	rate = now > lastTime ? delta * 1000L / (now - lastTime) : 0L;
+	lastBytes = total;
+	lastTime = now;
+	int count = active.get();
+	if ((count > 0 || delta > 0) && hasSubscribers()) {
+	    long len = activeLength.get();
+	    short pct = len > 0 ? (short)Math.min(100L, activeBytes.get() * 100L / len) : 100;
+	    publish(Progress.UPDATE, new Sample(pct, total, count, completed.get(), rate));
+	}
+    }
+}
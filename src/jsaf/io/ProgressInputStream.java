@@ -18,14 +18,15 @@ import jsaf.intf.util.Progress;
 /**
  * InputStream that publishes Progress.UPDATE events as the underlying stream is read.
  *
+ * Since 1.7, updates are coalesced according to a ProgressPolicy (ProgressPolicy.DEFAULT, unless otherwise specified), and
+ * the transfer is reported to the shared ProgressAggregator.
+ *
  * @since 1.6.3
  * @author David A. Solin
  * @version %I% %G%
  */
 public class ProgressInputStream extends InputStream {
-    private IPublisher<Progress> publisher;
-    private long length, bytesRead=0;
-    private short lastPct = 0;
+    private ProgressTracker tracker;
     private InputStream in;
 
     public ProgressInputStream(byte[] buff, IPublisher<Progress> publisher) throws IOException {
@@ -40,6 +41,17 @@ public class ProgressInputStream extends InputStream {
 	this(new FileInputStream(f), f.length(), publisher);
     }
 
+    /**
+     * Create a ProgressInputStream for a stream of the specified length, which publishes updates according to the
+     * specified policy.
+     *
+     * @since 1.7
+     */
+    public ProgressInputStream(InputStream in, long length, IPublisher<Progress> publisher, ProgressPolicy policy) {
+	this.in = in;
+	tracker = new ProgressTracker(publisher, length, policy);
+    }
+
     @Override
     public int available() throws IOException {
 	return in.available();
@@ -48,8 +60,10 @@ public class ProgressInputStream extends InputStream {
     @Override
     public int read() throws IOException {
 	int ch = in.read();
-	if (ch != -1) {
-	    update(1);
+	if (ch == -1) {
+	    tracker.finish();
+	} else {
+	    tracker.update(1);
 	}
 	return ch;
     }
@@ -62,33 +76,23 @@ public class ProgressInputStream extends InputStream {
     @Override
     public int read(byte[] buff, int offset, int length) throws IOException {
 	int result = in.read(buff, offset, length);
-	update(result);
+	if (result == -1) {
+	    tracker.finish();
+	} else {
+	    tracker.update(result);
+	}
 	return result;
     }
 
     @Override
     public void close() throws IOException {
+	tracker.finish();
 	in.close();
     }
 
     // Private
 
     private ProgressInputStream(InputStream in, long length, IPublisher<Progress> publisher) throws IOException {
-	if (publisher == null) {
-	    throw new NullPointerException();
-	}
-	this.publisher = publisher;
-	this.in = in;
-	this.length = length;
-    }
-
-    private void update(int len) {
-	if (len > 0) {
-	    bytesRead += len;
-	    short pct = (short)((bytesRead * 100L) / length);
-	    if (pct > lastPct) {
-		publisher.publish(Progress.UPDATE, new Progress.Update(lastPct = pct, bytesRead));
-	    }
-	}
+	this(in, length, publisher, ProgressPolicy.DEFAULT);
     }
 }
@@ -12,29 +12,36 @@ import jsaf.intf.util.Progress;
 /**
  * OutputStream that publishes Progress.UPDATE events as the underlying stream is written.
  *
+ * Since 1.7, updates are coalesced according to a ProgressPolicy (ProgressPolicy.DEFAULT, unless otherwise specified), and
+ * the transfer is reported to the shared ProgressAggregator.
+ *
  * @since 1.6.6
  * @author David A. Solin
  * @version %I% %G%
  */
 public class ProgressOutputStream extends OutputStream {
-    private IPublisher<Progress> publisher;
-    private int length, bytesWritten=0;
-    private short lastPct = 0;
+    private ProgressTracker tracker;
     private OutputStream out;
 
     public ProgressOutputStream(OutputStream out, int length, IPublisher<Progress> publisher) throws IOException {
-	if (publisher == null) {
-	    throw new NullPointerException();
-	}
-	this.publisher = publisher;
+	this(out, (long)length, publisher, ProgressPolicy.DEFAULT);
+    }
+
+    /**
+     * Create a ProgressOutputStream for the specified number of bytes, which publishes updates according to the specified
+     * policy.
+     *
+     * @since 1.7
+     */
+    public ProgressOutputStream(OutputStream out, long length, IPublisher<Progress> publisher, ProgressPolicy policy) {
 	this.out = out;
-	this.length = length;
+	tracker = new ProgressTracker(publisher, length, policy);
     }
 
     @Override
     public void write(int b) throws IOException {
 	out.write(b);
-	update(1);
+	tracker.update(1);
     }
 
     @Override
@@ -45,24 +52,12 @@ public class ProgressOutputStream extends OutputStream {
     @Override
     public void write(byte[] buff, int offset, int length) throws IOException {
 	out.write(buff, offset, length);
-	update(length);
+	tracker.update(length);
     }
 
     @Override
     public void close() throws IOException {
+	tracker.finish();
 	out.close();
     }
-
-    // Private
-
-
-    private void update(int len) {
-	if (len > 0) {
-	    bytesWritten += len;
-	    short pct = (short)((bytesWritten * 100) / length);
-	    if (pct > lastPct) {
-		publisher.publish(Progress.UPDATE, new Progress.Update(lastPct = pct, bytesWritten));
-	    }
-	}
-    }
 }
@@ -0,0 +1,59 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+/**
+ * A policy for coalescing the Progress.UPDATE events published by ProgressInputStream and ProgressOutputStream. An update
+ * is published when the percentage complete has increased, and either the minimum interval has elapsed or the minimum
+ * number of bytes has been transferred since the last update. The update for 100% is always published.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class ProgressPolicy {
+    /**
+     * Publish an update every time the percentage increases (the behavior prior to 1.7).
+     */
+    public static final ProgressPolicy EVERY_PERCENT = new ProgressPolicy(0L, 0L);
+
+    /**
+     * Publish at most one update every 100 milliseconds, unless at least 16MB has been transferred.
+     */
+    public static final ProgressPolicy DEFAULT = new ProgressPolicy(100L, 16L * 1024L * 1024L);
+
+    private long minInterval, minBytes;
+
+    /**
+     * Create a policy.
+     *
+     * @param minInterval the minimum interval between updates, in milliseconds
+     * @param minBytes the number of bytes after which an update is published regardless of the interval
+     */
+    public ProgressPolicy(long minInterval, long minBytes) {
+	if (minInterval < 0 || minBytes < 0) {
+	    throw new IllegalArgumentException();
+	}
+	this.minInterval = minInterval;
+	this.minBytes = minBytes;
+    }
+
+    public long getMinInterval() {
+	return minInterval;
+    }
+
+    public long getMinBytes() {
+	return minBytes;
+    }
+
+    /**
+     * Determine whether an update should be published.
+     *
+     * @param elapsed the time since the last update, in milliseconds
+     * @param bytes the number of bytes transferred since the last update
+     */
+    public boolean shouldPublish(long elapsed, long bytes) {
+	return elapsed >= minInterval || bytes >= minBytes;
+    }
+}
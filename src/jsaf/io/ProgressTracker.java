@@ -0,0 +1,80 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import jsaf.intf.util.IPublisher;
+import jsaf.intf.util.Progress;
+import jsaf.util.Publisher;
+
+/**
+ * Tracks the progress of a transfer for ProgressInputStream and ProgressOutputStream, publishing Progress.UPDATE events
+ * according to a ProgressPolicy, and reporting the transfer to the shared ProgressAggregator.
+ *
+ * If the publisher is a Publisher without any subscribers, no events are created.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+class ProgressTracker {
+    private IPublisher<Progress> publisher;
+    private ProgressPolicy policy;
+    private ProgressAggregator aggregator;
+    private long length, bytes, lastBytes, lastTime;
+    private short lastPct;
+    private boolean finished;
+
+    ProgressTracker(IPublisher<Progress> publisher, long length, ProgressPolicy policy) {
+	if (publisher == null || policy == null) {
+	    throw new NullPointerException();
+	}
+	this.publisher = publisher;
+	this.length = length;
+	this.policy = policy;
+	bytes = 0L;
+	lastBytes = 0L;
+	lastTime = System.currentTimeMillis();
+	lastPct = 0;
+	finished = false;
+	aggregator = ProgressAggregator.getInstance();
+	aggregator.started(length);
+    }
+
+    /**
+     * Record the transfer of len bytes.
+     */
+    void update(int len) {
+	if (len > 0 && !finished) {
+	    bytes += len;
+	    aggregator.transferred(len, length);
+	    if (length > 0) {
+		short pct = (short)Math.min(100L, (bytes * 100L) / length);
+		if (pct > lastPct) {
+		    long now = System.currentTimeMillis();
+		    if (pct == 100 || policy.shouldPublish(now - lastTime, bytes - lastBytes)) {
+			lastPct = pct;
+			lastTime = now;
+			lastBytes = bytes;
+			if (!(publisher instanceof Publisher) || ((Publisher)publisher).hasSubscribers()) {
+			    publisher.publish(Progress.UPDATE, new Progress.Update(pct, bytes));
+			}
+		    }
+		}
+		if (bytes >= length) {
+		    finish();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Record the end of the transfer (which may be incomplete).
+     */
+    void finish() {
+	if (!finished) {
+	    finished = true;
+	    aggregator.finished(length, bytes);
+	}
+    }
+}
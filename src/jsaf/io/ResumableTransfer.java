@@ -0,0 +1,424 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.slf4j.cal10n.LocLogger;
+
+import jsaf.Message;
+import jsaf.intf.io.IFile;
+import jsaf.intf.io.IRandomAccess;
+import jsaf.util.TaskExecutor;
+
+/**
+ * Copies a (complete) remote file to a local file in the background. The file is first read sequentially using its
+ * InputStream (which remote filesystem implementations can pipeline); if the transfer is interrupted by an error, it is
+ * resumed using random access from the last chunk that was written locally, after checking that the tail of the local copy
+ * still matches the remote file (otherwise, the transfer starts over). A sequential read that stalls for longer than the read
+ * timeout is treated as an error, so the transfer is resumed.
+ *
+ * Only the OVERLAP bytes preceding the resume offset are compared, so the resumed data itself is not checksummed. The
+ * integrity of a resumed copy is therefore only guaranteed when the data carries its own checksum; e.g., gzip output (see
+ * SafeCLI.GZIP_PROP), whose CRC is checked as it is decompressed.
+ *
+ * The local copy can be read while the transfer is in progress, using the InputStream returned by getInputStream, so that
+ * copying and consuming the data overlap. If a read-ahead limit is set, the transfer pauses whenever it gets that far ahead
+ * of the reader.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class ResumableTransfer implements Runnable {
+    static final int CHUNK_SIZE = 65536;
+
+    /**
+     * The number of bytes preceding the resume offset that are compared, to verify the local copy.
+     */
+    static final int OVERLAP = 4096;
+
+    private IFile source;
+    private File target;
+    private int retries;
+    private long timeout;
+    private LocLogger logger;
+    private long verified, length, consumed, readAhead;
+    private boolean complete, cancelled, deleteSource;
+    private IOException error;
+
+    /**
+     * Create a transfer.
+     *
+     * @param retries the number of times the transfer will be resumed after an error, before it fails
+     * @param timeout the maximum time that a sequential read of the source may take, in milliseconds
+     */
+    public ResumableTransfer(IFile source, File target, int retries, long timeout, LocLogger logger) {
+	this.source = source;
+	this.target = target;
+	this.retries = retries;
+	this.timeout = timeout;
+	this.logger = logger;
+	verified = 0L;
+	consumed = 0L;
+	readAhead = 0L;
+	length = -1L;
+	complete = false;
+	cancelled = false;
+	deleteSource = false;
+    }
+
+    /**
+     * Specify whether the source file should be deleted once the transfer has finished (successfully or otherwise).
+     */
+    public void setDeleteSource(boolean deleteSource) {
+	this.deleteSource = deleteSource;
+    }
+
+    /**
+     * Set the maximum number of bytes by which the transfer may get ahead of the reader of the stream returned by
+     * getInputStream. If 0 (the default), there is no limit.
+     */
+    public synchronized void setReadAhead(long readAhead) {
+	if (readAhead < 0) {
+	    throw new IllegalArgumentException(Long.toString(readAhead));
+	}
+	this.readAhead = readAhead;
+	notifyAll();
+    }
+
+    /**
+     * Start the transfer in the background.
+     */
+    public void start() {
+	TaskExecutor.getInstance().submit(this);
+    }
+
+    /**
+     * Get the number of bytes that have been written to the local file.
+     */
+    public synchronized long getVerifiedLength() {
+	return verified;
+    }
+
+    /**
+     * Get the length of the remote file, or -1 if it is not yet known.
+     */
+    public synchronized long getLength() {
+	return length;
+    }
+
+    /**
+     * Returns true if the transfer finished successfully.
+     */
+    public synchronized boolean isComplete() {
+	return complete;
+    }
+
+    /**
+     * Stop the transfer at the next chunk boundary.
+     */
+    public synchronized void cancel() {
+	cancelled = true;
+	notifyAll();
+    }
+
+    /**
+     * Wait for the transfer to finish.
+     *
+     * @throws IOException if the transfer failed
+     */
+    public synchronized void await() throws IOException {
+	try {
+	    while (!complete && error == null) {
+		wait();
+	    }
+	} catch (InterruptedException e) {
+	    throw new InterruptedIOException();
+	}
+	if (error != null) {
+	    throw error;
+	}
+    }
+
+    /**
+     * Get a stream that reads the local file, which blocks (while the transfer is in progress) until more data has been
+     * written, and which throws the transfer's IOException if it fails.
+     */
+    public InputStream getInputStream() throws IOException {
+	return new TailInputStream();
+    }
+
+    // Implement Runnable
+
+    public void run() {
+	RandomAccessFile out = null;
+	byte[] buff = BufferPool.borrow(CHUNK_SIZE);
+	try {
+	    out = new RandomAccessFile(target, "rw");
+	    for (int failures=0; true; ) {
+		try {
+		    if (failures == 0) {
+			stream(out, buff);
+		    } else {
+			resume(out, buff);
+		    }
+		    break;
+		} catch (InterruptedIOException e) {
+		    throw e;
+		} catch (IOException e) {
+		    if (++failures > retries) {
+			throw e;
+		    }
+		    logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+		}
+	    }
+	    synchronized(this) {
+		complete = true;
+		notifyAll();
+	    }
+	} catch (IOException e) {
+	    synchronized(this) {
+		error = e;
+		notifyAll();
+	    }
+	} finally {
+	    BufferPool.release(buff);
+	    if (out != null) {
+		try {
+		    out.close();
+		} catch (IOException e) {
+		}
+	    }
+	    if (deleteSource) {
+		try {
+		    source.delete();
+		} catch (IOException e) {
+		    logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+		}
+	    }
+	}
+    }
+
+    // Private
+
+    /**
+     * Copy the whole source file sequentially.
+     */
+    private void stream(RandomAccessFile out, byte[] buff) throws IOException {
+	PerishableReader in = null;
+	long offset = 0L;
+	try {
+	    in = PerishableReader.newInstance(source.getInputStream(), timeout);
+	    int n;
+	    while ((n = read(in, buff)) != -1) {
+		out.write(buff, 0, n);
+		offset += n;
+		publish(offset);
+	    }
+	    synchronized(this) {
+		length = offset;
+	    }
+	} catch (InterruptedIOException e) {
+	    if (in != null && in.checkExpired()) {
+		//
+		// A stalled read is an error from which the transfer can be resumed (unlike a cancellation)
+		//
+		throw new IOException(Message.getMessage(Message.ERROR_TRANSFER_STALLED, source.getPath(), offset), e);
+	    }
+	    throw e;
+	} finally {
+	    if (in != null) {
+		try {
+		    in.close();
+		} catch (IOException e) {
+		}
+	    }
+	}
+    }
+
+    /**
+     * Copy the remainder of the source file, using random access.
+     */
+    private void resume(RandomAccessFile out, byte[] buff) throws IOException {
+	IRandomAccess in = null;
+	try {
+	    in = source.getRandomAccess("r");
+	    long len = in.length();
+	    synchronized(this) {
+		length = len;
+	    }
+	    long offset = resumeOffset(in, out);
+	    if (offset > 0) {
+		logger.info(Message.STATUS_TRANSFER_RESUME, source.getPath(), offset);
+	    }
+	    in.seek(offset);
+	    out.seek(offset);
+	    out.setLength(offset);
+	    while (offset < len) {
+		awaitReader();
+		int n = in.read(buff, 0, (int)Math.min((long)buff.length, len - offset));
+		if (n == -1) {
+		    throw new EOFException(Long.toString(offset));
+		}
+		out.write(buff, 0, n);
+		offset += n;
+		publish(offset);
+	    }
+	} finally {
+	    if (in != null) {
+		try {
+		    in.close();
+		} catch (IOException e) {
+		}
+	    }
+	}
+    }
+
+    /**
+     * Read up to one buffer-full from the stream, after waiting for the reader to catch up.
+     */
+    private int read(InputStream in, byte[] buff) throws IOException {
+	awaitReader();
+	return in.read(buff);
+    }
+
+    /**
+     * Block while the transfer is readAhead bytes ahead of the reader.
+     */
+    private synchronized void awaitReader() throws IOException {
+	try {
+	    while (readAhead > 0 && verified - consumed >= readAhead && !cancelled) {
+		wait();
+	    }
+	} catch (InterruptedException e) {
+	    throw new InterruptedIOException();
+	}
+	if (cancelled) {
+	    throw new InterruptedIOException();
+	}
+    }
+
+    private synchronized void publish(long offset) {
+	verified = offset;
+	notifyAll();
+    }
+
+    private synchronized void consume(long position) {
+	if (position > consumed) {
+	    consumed = position;
+	    notifyAll();
+	}
+    }
+
+    /**
+     * Determine the offset from which the transfer should proceed. The OVERLAP bytes preceding the verified offset are
+     * re-read from the source and compared to the target; if they differ, the transfer must start over.
+     */
+    private long resumeOffset(IRandomAccess in, RandomAccessFile out) throws IOException {
+	long offset = getVerifiedLength();
+	if (offset == 0L) {
+	    return 0L;
+	}
+	int len = (int)Math.min((long)OVERLAP, offset);
+	byte[] remote = new byte[len];
+	byte[] local = new byte[len];
+	in.seek(offset - len);
+	in.readFully(remote);
+	out.seek(offset - len);
+	out.readFully(local);
+	if (Arrays.equals(remote, local)) {
+	    return offset;
+	} else {
+	    publish(0L);
+	    return 0L;
+	}
+    }
+
+    /**
+     * Reads the target file up to the verified length.
+     */
+    class TailInputStream extends InputStream {
+	private RandomAccessFile in;
+	private long position;
+
+	TailInputStream() throws IOException {
+	    in = new RandomAccessFile(target, "r");
+	    position = 0L;
+	}
+
+	@Override
+	public int read() throws IOException {
+	    byte[] b = new byte[1];
+	    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buff, int offset, int len) throws IOException {
+	    if (len == 0) {
+		return 0;
+	    }
+	    long limit = awaitData();
+	    if (limit == -1L) {
+		return -1;
+	    }
+	    in.seek(position);
+	    int n = in.read(buff, offset, (int)Math.min((long)len, limit - position));
+	    if (n > 0) {
+		position += n;
+		consume(position);
+	    }
+	    return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+	    return (int)Math.max(0L, Math.min((long)Integer.MAX_VALUE, getVerifiedLength() - position));
+	}
+
+	/**
+	 * Closing the stream before the end has been reached cancels the transfer.
+	 */
+	@Override
+	public void close() throws IOException {
+	    if (!isComplete()) {
+		cancel();
+	    }
+	    in.close();
+	}
+
+	// Private
+
+	/**
+	 * Wait until there is data beyond the current position, and return the verified length, or -1 at the end.
+	 */
+	private long awaitData() throws IOException {
+	    synchronized(ResumableTransfer.this) {
+		try {
+		    while (verified <= position) {
+			if (verified < position) {
+			    throw new IOException(Message.getMessage(Message.ERROR_TRANSFER_CHANGED, source.getPath(), position));
+			} else if (error != null) {
+			    throw error;
+			} else if (complete) {
+			    return -1L;
+			} else if (cancelled) {
+			    throw new InterruptedIOException();
+			}
+			ResumableTransfer.this.wait();
+		    }
+		} catch (InterruptedException e) {
+		    throw new InterruptedIOException();
+		}
+		return verified;
+	    }
+	}
+    }
+}
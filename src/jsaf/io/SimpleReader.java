@@ -8,7 +8,6 @@ import java.io.EOFException;
 import java.io.InputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import org.slf4j.cal10n.LocLogger;
@@ -27,6 +26,7 @@ public class SimpleReader implements IReader {
     private InputStream in;
     private boolean closed, eof;
     private LocLogger logger;
+    private LineBuffer line;
 
     public SimpleReader(InputStream in) {
 	this.in = in;
@@ -76,15 +76,33 @@ public class SimpleReader implements IReader {
 	return readLine(Strings.UTF8);
     }
 
-    public String readLine(Charset charset) throws IOException {
-	byte[] buff = readUntilInternal('\n', false);
-	if (buff == null || buff.length == 0) {
-	    return eof ? null : "";
-	} else if (buff[buff.length - 1] == '\r') {
-	    return new String(buff, 0, buff.length - 1, charset);
-	} else {
-	    return new String(buff, charset);
+    public synchronized String readLine(Charset charset) throws IOException {
+	LineBuffer line = lineBuffer();
+	try {
+	    return readLine(line) ? line.toString(charset) : null;
+	} finally {
+	    line.clear();
+	}
+    }
+
+    /**
+     * Read a line (without its LF or CRLF terminator) into the supplied buffer, which is cleared first. Unlike
+     * readLine(Charset), this does not allocate a String for the line.
+     *
+     * @return false if the end of the stream was reached before any data was read
+     *
+     * @since 1.7
+     */
+    public synchronized boolean readLine(LineBuffer line) throws IOException {
+	line.clear();
+	readUntil('\n', line);
+	if (eof && line.size() == 0) {
+	    return false;
+	}
+	if (line.endsWith('\r')) {
+	    line.truncate(1);
 	}
+	return true;
     }
 
     public void readFully(byte[] buff) throws IOException {
@@ -164,26 +182,37 @@ public class SimpleReader implements IReader {
 	}
     }
 
-    public byte[] readUntilInternal(int ch, boolean throwEOF) throws IOException {
-	ArrayList<Byte> list = new ArrayList<Byte>();
-	while(true) {
-	    int c = read();
-	    if (c == ch || eof) {
-		if (eof) {
-		    if (throwEOF) {
-			throw new EOFException();
-		    } else if (list.size() == 0) {
-			return null;
-		    }
-		}
-		byte[] buff = new byte[list.size()];
-		for (int i=0; i < buff.length; i++) {
-		    buff[i] = list.get(i).byteValue();
+    public synchronized byte[] readUntilInternal(int ch, boolean throwEOF) throws IOException {
+	LineBuffer line = lineBuffer();
+	try {
+	    readUntil(ch, line);
+	    if (eof) {
+		if (throwEOF) {
+		    throw new EOFException();
+		} else if (line.size() == 0) {
+		    return null;
 		}
-		return buff;
-	    } else {
-		list.add(new Byte((byte)(0xFF & c)));
 	    }
+	    return line.toByteArray();
+	} finally {
+	    line.clear();
+	}
+    }
+
+    /**
+     * Append bytes to the buffer until ch (which is consumed but not appended) or the end of the stream is reached.
+     */
+    private void readUntil(int ch, LineBuffer line) throws IOException {
+	int c;
+	while ((c = read()) != ch && !eof) {
+	    line.append(c);
+	}
+    }
+
+    private LineBuffer lineBuffer() {
+	if (line == null) {
+	    line = new LineBuffer();
 	}
+	return line;
     }
 }
@@ -0,0 +1,369 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A write-once byte store that is held in memory until its size exceeds a threshold, after which its contents are moved to
+ * a temporary file and all subsequent writes go to that file. Once the buffer has been closed, a spilled file is
+ * memory-mapped, so its contents can be read without being copied onto the heap.
+ *
+ * The temporary file is deleted when delete is called, or else by the TempFiles reaper after the buffer has been
+ * garbage-collected.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class SpillBuffer extends OutputStream {
+    /**
+     * The maximum size of a single mapped region of a spilled file.
+     */
+    static final long REGION_SIZE = 1L << 30;
+
+    private long threshold, size;
+    private File dir, file;
+    private ChunkedBuffer memory;
+    private OutputStream fileOut;
+    private ByteBuffer[] regions;
+    private boolean closed;
+
+    /**
+     * Create a buffer that never spills to disk.
+     */
+    public SpillBuffer() {
+	this(Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Create a buffer that will spill to a temporary file in dir, once more than threshold bytes have been written.
+     *
+     * @param dir the directory in which to create the temporary file, or null to use the default temporary directory
+     */
+    public SpillBuffer(long threshold, File dir) {
+	if (threshold < 0) {
+	    throw new IllegalArgumentException(Long.toString(threshold));
+	}
+	this.threshold = threshold;
+	this.dir = dir;
+	memory = new ChunkedBuffer();
+	size = 0L;
+	closed = false;
+    }
+
+    /**
+     * Get the number of bytes that have been written to the buffer.
+     */
+    public long size() {
+	return size;
+    }
+
+    /**
+     * Returns true if the buffer contents have been moved to a temporary file.
+     */
+    public boolean isSpilled() {
+	return file != null;
+    }
+
+    /**
+     * Get the temporary file containing the buffer contents, or null if the buffer has not spilled.
+     */
+    public File getFile() {
+	return file;
+    }
+
+    /**
+     * Get the in-memory buffer, or null if the buffer has spilled.
+     */
+    public ChunkedBuffer getMemoryBuffer() {
+	return memory;
+    }
+
+    /**
+     * Discard the buffer contents (deleting any temporary file), so that it can be written again.
+     */
+    public void reset() {
+	delete();
+	memory = new ChunkedBuffer();
+	size = 0L;
+	closed = false;
+    }
+
+    /**
+     * Discard the buffer contents, and delete the temporary file, if there is one.
+     */
+    public void delete() {
+	if (fileOut != null) {
+	    try {
+		fileOut.close();
+	    } catch (IOException e) {
+	    }
+	    fileOut = null;
+	}
+	regions = null;
+	if (file != null) {
+	    //
+	    // On some platforms a mapped file cannot be deleted until the mapping has been garbage-collected; in that case,
+	    // the deletion will be retried by the TempFiles reaper.
+	    //
+	    TempFiles.delete(file);
+	    file = null;
+	}
+	memory = null;
+	size = 0L;
+	closed = true;
+    }
+
+    /**
+     * Get an InputStream that reads the contents of the buffer in place.
+     *
+     * @throws IllegalStateException if the buffer has spilled and has not been closed
+     */
+    public InputStream getInputStream() {
+	if (memory == null) {
+	    return new ByteBuffersInputStream(toByteBuffers());
+	} else {
+	    return memory.getInputStream();
+	}
+    }
+
+    /**
+     * Get read-only ByteBuffer views of the buffer contents. For a spilled buffer, these are mapped regions of the file.
+     *
+     * @throws IllegalStateException if the buffer has spilled and has not been closed
+     */
+    public ByteBuffer[] toByteBuffers() {
+	if (memory == null) {
+	    checkMapped();
+	    ByteBuffer[] views = new ByteBuffer[regions.length];
+	    for (int i=0; i < views.length; i++) {
+		views[i] = regions[i].duplicate();
+	    }
+	    return views;
+	} else {
+	    return memory.toByteBuffers();
+	}
+    }
+
+    /**
+     * Copy the contents of the buffer into a new byte array.
+     *
+     * @throws IllegalStateException if the buffer has spilled and has not been closed
+     * @throws OutOfMemoryError if the buffer is too large to be copied into an array
+     */
+    public byte[] toByteArray() {
+	if (memory == null) {
+	    checkMapped();
+	    if (size > Integer.MAX_VALUE) {
+		throw new OutOfMemoryError(Long.toString(size));
+	    }
+	    byte[] data = new byte[(int)size];
+	    int offset = 0;
+	    for (ByteBuffer region : regions) {
+		ByteBuffer view = region.duplicate();
+		int len = view.remaining();
+		view.get(data, offset, len);
+		offset += len;
+	    }
+	    return data;
+	} else {
+	    return memory.toByteArray();
+	}
+    }
+
+    // Implement OutputStream
+
+    @Override
+    public void write(int b) throws IOException {
+	checkWritable();
+	if (memory == null) {
+	    fileOut.write(b);
+	} else if (size + 1 > threshold) {
+	    spill().write(b);
+	} else {
+	    memory.write(b);
+	}
+	size++;
+    }
+
+    @Override
+    public void write(byte[] buff, int offset, int len) throws IOException {
+	checkWritable();
+	if (memory == null) {
+	    fileOut.write(buff, offset, len);
+	} else if (size + len > threshold) {
+	    spill().write(buff, offset, len);
+	} else {
+	    memory.write(buff, offset, len);
+	}
+	size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+	if (fileOut != null) {
+	    fileOut.flush();
+	}
+    }
+
+    /**
+     * Finish writing. If the buffer has spilled, the file is closed and memory-mapped for reading.
+     */
+    @Override
+    public void close() throws IOException {
+	if (!closed) {
+	    closed = true;
+	    if (fileOut != null) {
+		fileOut.close();
+		fileOut = null;
+		map();
+	    }
+	}
+    }
+
+    // Private
+
+    private void checkWritable() throws IOException {
+	if (closed) {
+	    throw new IOException("closed");
+	}
+    }
+
+    private void checkMapped() {
+	if (regions == null) {
+	    throw new IllegalStateException("not closed");
+	}
+    }
+
+    /**
+     * Move the in-memory contents to a new temporary file, and return the stream to which subsequent data should be written.
+     */
+    private OutputStream spill() throws IOException {
+	file = TempFiles.create("spill", ".tmp", dir, this);
+	fileOut = new BufferedOutputStream(new FileOutputStream(file), ChunkedBuffer.CHUNK_SIZE);
+	memory.writeTo(fileOut);
+	memory = null;
+	return fileOut;
+    }
+
+    /**
+     * Map the spilled file into memory, in regions of up to REGION_SIZE bytes. The mappings remain valid after the channel
+     * has been closed.
+     */
+    private void map() throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    int count = (int)((size + REGION_SIZE - 1) / REGION_SIZE);
+	    ByteBuffer[] mapped = new ByteBuffer[count];
+	    for (int i=0; i < count; i++) {
+		long pos = i * REGION_SIZE;
+		MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(REGION_SIZE, size - pos));
+		mapped[i] = region.asReadOnlyBuffer();
+	    }
+	    regions = mapped;
+	} finally {
+	    raf.close();
+	}
+    }
+
+    /**
+     * An InputStream that reads a sequence of ByteBuffers.
+     */
+    static class ByteBuffersInputStream extends InputStream {
+	private ByteBuffer[] buffers;
+	private int index, markIndex;
+	private int[] marks;
+
+	ByteBuffersInputStream(ByteBuffer[] buffers) {
+	    this.buffers = buffers;
+	    index = 0;
+	}
+
+	@Override
+	public int read() {
+	    ByteBuffer buffer = current();
+	    return buffer == null ? -1 : buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buff, int offset, int len) {
+	    if (len == 0) {
+		return 0;
+	    }
+	    ByteBuffer buffer = current();
+	    if (buffer == null) {
+		return -1;
+	    }
+	    int n = Math.min(len, buffer.remaining());
+	    buffer.get(buff, offset, n);
+	    return n;
+	}
+
+	@Override
+	public long skip(long n) {
+	    long skipped = 0L;
+	    ByteBuffer buffer;
+	    while (skipped < n && (buffer = current()) != null) {
+		int len = (int)Math.min(n - skipped, (long)buffer.remaining());
+		buffer.position(buffer.position() + len);
+		skipped += len;
+	    }
+	    return skipped;
+	}
+
+	@Override
+	public int available() {
+	    ByteBuffer buffer = current();
+	    return buffer == null ? 0 : buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+	    return true;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+	    markIndex = index;
+	    marks = new int[buffers.length];
+	    for (int i=0; i < buffers.length; i++) {
+		marks[i] = buffers[i].position();
+	    }
+	}
+
+	@Override
+	public void reset() throws IOException {
+	    if (marks == null) {
+		throw new IOException("no mark");
+	    }
+	    index = markIndex;
+	    for (int i=0; i < buffers.length; i++) {
+		buffers[i].position(marks[i]);
+	    }
+	}
+
+	// Private
+
+	private ByteBuffer current() {
+	    while (index < buffers.length) {
+		if (buffers[index].hasRemaining()) {
+		    return buffers[index];
+		}
+		index++;
+	    }
+	    return null;
+	}
+    }
+}
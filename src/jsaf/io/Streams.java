@@ -21,6 +21,7 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
@@ -32,6 +33,7 @@ import org.slf4j.cal10n.LocLogger;
 
 import jsaf.Message;
 import jsaf.util.Strings;
+import jsaf.util.TaskExecutor;
 
 /**
  * Some stream utilities.
@@ -75,6 +77,29 @@ public class Streams {
 	}
     }
 
+    /**
+     * Policies governing when a copy flushes its OutputStream.
+     *
+     * @since 1.7
+     */
+    public enum Flush {
+	/**
+	 * Flush after every write.
+	 */
+	EACH_WRITE,
+
+	/**
+	 * Flush whenever the InputStream has no more data immediately available, i.e., before the copy might block. This
+	 * keeps interactive streams responsive, without flushing in the middle of bulk transfers.
+	 */
+	WHEN_IDLE,
+
+	/**
+	 * Flush only when the copy is finished.
+	 */
+	AT_END;
+    }
+
     /**
      * Useful in debugging...
      *
@@ -142,13 +167,22 @@ public class Streams {
     }
 
     /**
-     * Copy from in to out asynchronously (i.e., in a new Thread). Closes the InputStream when done, and closes
-     * the OutputStream according to closeOut.
+     * Copy from in to out asynchronously (i.e., using the shared TaskExecutor). Closes the InputStream when done, and
+     * closes the OutputStream according to closeOut. The OutputStream is flushed whenever the InputStream is idle.
      *
      * @since 1.3.5
      */
     public static void copyAsync(InputStream in, OutputStream out, boolean closeOut) {
-	new Copier(in, out, closeOut).start();
+	copyAsync(in, out, closeOut, Flush.WHEN_IDLE);
+    }
+
+    /**
+     * Copy from in to out asynchronously, flushing the OutputStream according to the specified policy.
+     *
+     * @since 1.7
+     */
+    public static void copyAsync(InputStream in, OutputStream out, boolean closeOut, Flush flush) {
+	new Copier(in, out, closeOut, flush).start();
     }
 
     /**
@@ -162,11 +196,25 @@ public class Streams {
 
     /**
      * Copy completely from in to out.  Closes the InputStream when done.  Closes the OutputStream according to closeOut.
+     * The OutputStream is flushed when the copy is finished.
      *
      * @since 1.2
      */
     public static void copy(InputStream in, OutputStream out, boolean closeOut) throws IOException {
-	Copier copier = new Copier(in, out, closeOut);
+	copy(in, out, closeOut, Flush.AT_END);
+    }
+
+    /**
+     * Copy completely from in to out, flushing the OutputStream according to the specified policy.
+     *
+     * If in is a FileInputStream and out is a FileOutputStream, the data is transferred between their channels (which, on
+     * most platforms, happens without copying it through the JVM heap). Otherwise, it is copied through a pooled buffer,
+     * whose size adapts to the amount of data that the InputStream delivers per read.
+     *
+     * @since 1.7
+     */
+    public static void copy(InputStream in, OutputStream out, boolean closeOut, Flush flush) throws IOException {
+	Copier copier = new Copier(in, out, closeOut, flush);
 	copier.run();
 	if (copier.hasError()) {
 	    throw copier.error();
@@ -264,25 +312,27 @@ public class Streams {
      * @since 1.3.7
      */
     public static String readLine(InputStream in, Charset charset) throws IOException {
-	ByteArrayOutputStream buff = new ByteArrayOutputStream();
-	int ch = -1;
-	while((ch = in.read()) != -1) {
-	    switch(ch) {
-	      case '\n':
-		byte[] data = buff.toByteArray();
-		if (data.length == 0) {
-		    return "";
-		} else if (data[data.length - 1] == '\r') {
-		    return new String(buff.toByteArray(), 0, data.length - 1, charset);
+	LineBuffer line = LINE.get();
+	try {
+	    int ch = -1;
+	    while((ch = in.read()) != -1) {
+		if (ch == '\n') {
+		    if (line.size() == 0) {
+			return "";
+		    } else if (line.endsWith('\r')) {
+			line.truncate(1);
+			return line.toString(charset);
+		    } else {
+			return line.toString(charset).trim();
+		    }
 		} else {
-		    return new String(buff.toByteArray(), charset).trim();
+		    line.append(ch);
 		}
-	      default:
-		buff.write(ch);
-		break;
 	    }
+	    throw new EOFException();
+	} finally {
+	    line.clear();
 	}
-	throw new EOFException();
     }
 
     /**
@@ -315,24 +365,59 @@ public class Streams {
      * @since 1.5.0
      */
     public static final InputStream open(URL url) throws IOException {
-	BufferedInputStream in = new BufferedInputStream(url.openStream());
-	byte[] buff = new byte[4];
-	in.mark(4);
-	Streams.readFully(in, buff);
-	in.reset();
-	if (Arrays.equals(Magic.ZIP.bytes(), buff)) {
+	return decompress(url.openStream());
+    }
+
+    /**
+     * Detects and handles compression of the stream content, like open(URL).
+     *
+     * @since 1.7
+     */
+    public static final InputStream decompress(InputStream raw) throws IOException {
+	BufferedInputStream in = new BufferedInputStream(raw);
+	Magic magic = detect(in);
+	if (magic == Magic.ZIP) {
 	    Zipped zip = new Zipped(new ZipInputStream(in));
 	    zip.getNextEntry();
 	    return zip;
-	} else if (Arrays.equals(Magic.GZIP.bytes(), Arrays.copyOfRange(buff, 0, Magic.GZIP.bytes().length))) {
+	} else if (magic == Magic.GZIP) {
 	    return new GZIPInputStream(in);
-	} else if (Arrays.equals(Magic.BZ2.bytes(), Arrays.copyOfRange(buff, 0, Magic.BZ2.bytes().length))) {
+	} else if (magic == Magic.BZ2) {
 	    return new CBZip2InputStream(in);
 	} else {
 	    return in;
 	}
     }
 
+    /**
+     * Detects the compression format of the stream content, by peeking at its first bytes. The stream is reset to its
+     * original position.
+     *
+     * @return the format, or null if the content is not compressed (in a recognized format)
+     *
+     * @since 1.7
+     */
+    public static final Magic detect(BufferedInputStream in) throws IOException {
+	byte[] buff = new byte[4];
+	in.mark(buff.length);
+	int len = 0;
+	try {
+	    int n = 0;
+	    while (len < buff.length && (n = in.read(buff, len, buff.length - len)) != -1) {
+		len += n;
+	    }
+	} finally {
+	    in.reset();
+	}
+	for (Magic magic : Magic.values()) {
+	    byte[] bytes = magic.bytes();
+	    if (len >= bytes.length && Arrays.equals(bytes, Arrays.copyOf(buff, bytes.length))) {
+		return magic;
+	    }
+	}
+	return null;
+    }
+
     /**
      * Detects and handles compression of the URL content.
      *
@@ -476,17 +561,25 @@ public class Streams {
     }
 
     private static class Copier implements Runnable {
+	/**
+	 * The initial size of the portion of the copy buffer that is used; this doubles (up to COPY_BUFFER_SIZE) every time
+	 * a read fills it.
+	 */
+	static final int MIN_READ = 4096;
+
 	InputStream in;
 	OutputStream out;
 	IOException error;
-	boolean closeOut;
-	Thread thread;
+	boolean closeOut, async;
+	Flush flush;
 
-	Copier(InputStream in, OutputStream out, boolean closeOut) {
+	Copier(InputStream in, OutputStream out, boolean closeOut, Flush flush) {
 	    this.in = in;
 	    this.out = out;
 	    this.closeOut = closeOut;
+	    this.flush = flush;
 	    error = null;
+	    async = false;
 	}
 
 	boolean hasError() {
@@ -498,21 +591,46 @@ public class Streams {
 	}
 
 	void start() {
-	    (thread = new Thread(this)).start();
+	    async = true;
+	    //
+	    // As when copies were made in non-daemon threads of their own, the JVM will not exit until the copy is complete
+	    //
+	    TaskExecutor.getInstance().submitForeground(this);
 	}
 
 	// Implement Runnable
 
 	public void run() {
 	    try {
-		byte[] buff = new byte[1024];
-		int len = 0;
-		while ((len = in.read(buff)) > 0) {
-		    out.write(buff, 0, len);
-		    out.flush();
+		if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+		    transfer(((FileInputStream)in).getChannel(), ((FileOutputStream)out).getChannel());
+		}
+		byte[] buff = BufferPool.borrow(COPY_BUFFER_SIZE);
+		try {
+		    int size = MIN_READ;
+		    int len = 0;
+		    while ((len = in.read(buff, 0, size)) > 0) {
+			out.write(buff, 0, len);
+			if (len == size && size < buff.length) {
+			    size <<= 1;
+			}
+			switch(flush) {
+			  case EACH_WRITE:
+			    out.flush();
+			    break;
+			  case WHEN_IDLE:
+			    if (in.available() == 0) {
+				out.flush();
+			    }
+			    break;
+			}
+		    }
+		} finally {
+		    BufferPool.release(buff);
 		}
+		out.flush();
 	    } catch (IOException e) {
-		if (thread == null) {
+		if (!async) {
 		    error = e;
 		} else {
 		    Message.getLogger().warn(Message.ERROR_EXCEPTION, e);
@@ -530,8 +648,44 @@ public class Streams {
 		}
 	    }
 	}
+
+	// Private
+
+	/**
+	 * Transfer the remaining contents of the input file to the output channel. This stops early if the input is not a
+	 * regular file (e.g., a pipe, which cannot be positioned), in which case the rest is copied through the buffer.
+	 */
+	private void transfer(FileChannel source, FileChannel target) throws IOException {
+	    long pos, size;
+	    try {
+		pos = source.position();
+		size = source.size();
+	    } catch (IOException e) {
+		return;
+	    }
+	    while (pos < size) {
+		long len = source.transferTo(pos, size - pos, target);
+		if (len <= 0) {
+		    break;
+		}
+		pos += len;
+	    }
+	    source.position(pos);
+	}
     }
 
+    static final int COPY_BUFFER_SIZE = 65536;
+
+    /**
+     * Reusable line storage for readLine.
+     */
+    private static final ThreadLocal<LineBuffer> LINE = new ThreadLocal<LineBuffer>() {
+	@Override
+	protected LineBuffer initialValue() {
+	    return new LineBuffer();
+	}
+    };
+
     private static final OutputStream DEVNULL = new DevNull();
 
     private static class DevNull extends OutputStream {
@@ -0,0 +1,311 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jsaf.JSAFSystem;
+
+/**
+ * A registry of the temporary files created by jSAF, which replaces File.deleteOnExit (whose list of files grows without
+ * bound in a long-running JVM) and finalizers.
+ *
+ * A registered file may have an owner object (e.g., a LineIterator). The owner is expected to delete the file when it is
+ * closed, but if the owner is garbage-collected without having done so, the file is deleted by a reaper task that runs
+ * periodically on the JSAF system timer. The reaper also retries deletions that failed (e.g., because the file was still
+ * memory-mapped on Windows). Any files that remain when the JVM exits are deleted by a shutdown hook.
+ *
+ * Files created using create are named with a common prefix, followed by an identifier of the JVM that created them. For
+ * as long as it runs, a JVM holds a lock on a file named for its identifier in each directory it uses. The first time a
+ * directory is used by this JVM, the files in it that were orphaned by other JVMs (i.e., whose lock files are no longer
+ * locked, because they did not exit cleanly) are deleted. Files with the prefix that do not identify their JVM are only
+ * deleted once they are older than ORPHAN_AGE.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class TempFiles {
+    /**
+     * The prefix of the names of files created using create.
+     */
+    public static final String PREFIX = "jsaf_";
+
+    /**
+     * The interval at which the reaper runs, in milliseconds.
+     */
+    static final long REAP_INTERVAL = 60000L;
+
+    /**
+     * The age after which a file with the prefix, that does not identify the JVM that created it, is deemed orphaned.
+     */
+    static final long ORPHAN_AGE = 86400000L;
+
+    /**
+     * The suffix of the names of the lock files held by JVMs.
+     */
+    static final String LOCK_SUFFIX = ".lock";
+
+    /**
+     * The identifier of this JVM, as it appears in the names of the files it creates.
+     */
+    private static final String ID = Long.toHexString(new java.security.SecureRandom().nextLong() & Long.MAX_VALUE);
+
+    private static final ConcurrentHashMap<File, FileLock> LOCKS = new ConcurrentHashMap<File, FileLock>();
+    private static final ConcurrentHashMap<File, Entry> LIVE = new ConcurrentHashMap<File, Entry>();
+    private static final Set<File> DIRS = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+    private static boolean started = false;
+
+    /**
+     * Create and register a temporary file.
+     *
+     * @param dir the directory in which to create the file, or null to use the default temporary directory (in which case
+     *            orphans are not reaped, since that directory may be shared with other processes)
+     * @param owner the object responsible for deleting the file, or null
+     */
+    public static File create(String prefix, String suffix, File dir, Object owner) throws IOException {
+	if (dir != null && DIRS.add(dir.getAbsoluteFile())) {
+	    lock(dir);
+	    reapOrphans(dir);
+	}
+	File file = File.createTempFile(new StringBuffer(PREFIX).append(ID).append("_").append(prefix).toString(), suffix, dir);
+	register(file, owner);
+	return file;
+    }
+
+    /**
+     * Register a temporary file, or change the owner of a registered file.
+     *
+     * @param owner the object responsible for deleting the file, or null
+     */
+    public static void register(File file, Object owner) {
+	LIVE.put(file, new Entry(file, owner));
+	start();
+    }
+
+    /**
+     * Delete a file, and unregister it. If the file cannot be deleted, its deletion is retried by the reaper.
+     *
+     * @return true if the file no longer exists
+     */
+    public static boolean delete(File file) {
+	if (file.delete() || !file.exists()) {
+	    LIVE.remove(file);
+	    return true;
+	} else {
+	    Entry entry = LIVE.get(file);
+	    if (entry != null) {
+		entry.abandoned = true;
+	    }
+	    return false;
+	}
+    }
+
+    /**
+     * Get the number of registered files.
+     */
+    public static int getCount() {
+	return LIVE.size();
+    }
+
+    /**
+     * Get the total size of the registered files, in bytes.
+     */
+    public static long getBytes() {
+	long bytes = 0L;
+	for (File file : LIVE.keySet()) {
+	    bytes += file.length();
+	}
+	return bytes;
+    }
+
+    /**
+     * Delete the files whose owners have been garbage-collected, and retry any deletions that failed.
+     *
+     * @return the number of files that were deleted
+     */
+    public static int reap() {
+	Reference<?> ref;
+	while ((ref = QUEUE.poll()) != null) {
+	    Entry entry = (Entry)ref;
+	    if (LIVE.get(entry.file) == entry) {
+		entry.abandoned = true;
+	    }
+	}
+	int count = 0;
+	for (Entry entry : LIVE.values()) {
+	    if (entry.abandoned && delete(entry.file)) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Delete the files in the directory that were created by jSAF in other JVMs which are no longer running, and any files
+     * with the prefix that do not identify their JVM and are older than ORPHAN_AGE.
+     *
+     * @return the number of files that were deleted
+     */
+    public static int reapOrphans(File dir) {
+	int count = 0;
+	File[] files = dir.listFiles();
+	if (files != null) {
+	    Map<String, Boolean> owners = new HashMap<String, Boolean>();
+	    long cutoff = System.currentTimeMillis() - ORPHAN_AGE;
+	    for (File file : files) {
+		String name = file.getName();
+		if (!name.startsWith(PREFIX) || name.endsWith(LOCK_SUFFIX) || !file.isFile() || LIVE.containsKey(file)) {
+		    continue;
+		}
+		String owner = getOwner(name);
+		boolean orphan = false;
+		if (owner == null || !new File(dir, PREFIX + owner + LOCK_SUFFIX).exists()) {
+		    orphan = file.lastModified() < cutoff;
+		} else if (!owner.equals(ID)) {
+		    Boolean dead = owners.get(owner);
+		    if (dead == null) {
+			owners.put(owner, dead = isDead(new File(dir, PREFIX + owner + LOCK_SUFFIX)));
+		    }
+		    orphan = dead.booleanValue();
+		}
+		if (orphan && file.delete()) {
+		    count++;
+		}
+	    }
+	    for (Map.Entry<String, Boolean> entry : owners.entrySet()) {
+		if (entry.getValue().booleanValue()) {
+		    new File(dir, PREFIX + entry.getKey() + LOCK_SUFFIX).delete();
+		}
+	    }
+	}
+	return count;
+    }
+
+    // Private
+
+    /**
+     * Start the reaper and the shutdown hook.
+     */
+    private static synchronized void start() {
+	if (!started) {
+	    started = true;
+	    JSAFSystem.scheduleTask(new Runnable() {
+		public void run() {
+		    reap();
+		}
+	    }, REAP_INTERVAL, REAP_INTERVAL);
+	    Runtime.getRuntime().addShutdownHook(new Thread("jSAF temp file cleanup") {
+		@Override
+		public void run() {
+		    for (File file : LIVE.keySet()) {
+			file.delete();
+		    }
+		    for (Map.Entry<File, FileLock> entry : LOCKS.entrySet()) {
+			try {
+			    entry.getValue().channel().close();
+			} catch (IOException e) {
+			}
+			entry.getKey().delete();
+		    }
+		}
+	    });
+	}
+    }
+
+    /**
+     * Create and lock this JVM's lock file in the directory, which marks the files it creates there as being in use. If the
+     * file cannot be locked (e.g., because the filesystem does not support locking), other JVMs will treat this JVM's files
+     * as they do files that do not identify their JVM.
+     */
+    private static void lock(File dir) {
+	File file = new File(dir, PREFIX + ID + LOCK_SUFFIX);
+	try {
+	    FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+	    FileLock lock = null;
+	    try {
+		lock = channel.tryLock();
+	    } finally {
+		if (lock == null) {
+		    channel.close();
+		    file.delete();
+		}
+	    }
+	    if (lock != null) {
+		LOCKS.put(file, lock);
+		start();
+	    }
+	} catch (IOException e) {
+	} catch (OverlappingFileLockException e) {
+	}
+    }
+
+    /**
+     * Determine whether the JVM that holds a lock file has exited, by trying to lock it.
+     */
+    private static boolean isDead(File lockFile) {
+	try {
+	    FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+	    try {
+		FileLock lock = channel.tryLock();
+		if (lock == null) {
+		    return false;
+		}
+		lock.release();
+		return true;
+	    } finally {
+		channel.close();
+	    }
+	} catch (OverlappingFileLockException e) {
+	    return false;
+	} catch (IOException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Get the identifier of the JVM that created a file, from its name, or null if the name does not contain one.
+     */
+    private static String getOwner(String name) {
+	int end = name.indexOf('_', PREFIX.length());
+	if (end == -1) {
+	    return null;
+	}
+	String owner = name.substring(PREFIX.length(), end);
+	for (int i=0; i < owner.length(); i++) {
+	    if (Character.digit(owner.charAt(i), 16) == -1) {
+		return null;
+	    }
+	}
+	return owner.length() == 0 ? null : owner;
+    }
+
+    /**
+     * A registered file, which is enqueued when its owner becomes phantom-reachable.
+     */
+    static class Entry extends PhantomReference<Object> {
+	final File file;
+	volatile boolean abandoned;
+
+	Entry(File file, Object owner) {
+	    super(owner, QUEUE);
+	    this.file = file;
+	    abandoned = false;
+	}
+    }
+}
@@ -0,0 +1,887 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.cal10n.LocLogger;
+
+import jsaf.JSAFSystem;
+import jsaf.Message;
+import jsaf.util.Checksum;
+
+/**
+ * A persistent, content-addressed cache of the (decompressed) contents of URLs, stored in the url_cache subdirectory of
+ * the JSAF data directory.
+ *
+ * Contents are stored in files named by their SHA-1 checksums, so that URLs with identical contents share a file. Each
+ * cached URL has an index file recording its validators: the ETag, Last-Modified and Content-Length headers of the
+ * response, if present, and the checksum of the contents. When a cached URL is requested again, it is revalidated using a conditional request
+ * (If-None-Match/If-Modified-Since); if the validators still match, the cached contents are used without being downloaded.
+ * If the server supplies no validators, the URL is downloaded again, but the contents are only stored again if their
+ * checksum has changed.
+ *
+ * The total size of the cached contents is bounded (see PROP_MAX_SIZE); the least-recently-used URLs are evicted first.
+ * Concurrent requests for the same URL share a single download. Contents can also be streamed to the caller as they are
+ * downloaded (see open), in which case they are stored once the stream has been read to the end. Since the caller controls
+ * the pace of such a download, a thread waiting to share it gives up and downloads the URL itself if it makes no progress
+ * for STALL_TIMEOUT.
+ *
+ * The cache directory may be shared by several processes. Loads, commits and evictions are serialized between processes
+ * using a lock file, and (in case the filesystem does not support locking) a contents file is only deleted as unreferenced
+ * once it is older than GRACE_PERIOD.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class URLCache {
+    /**
+     * System property specifying the maximum size of the cache, in bytes.
+     */
+    public static final String PROP_MAX_SIZE = "jsaf.urlcache.maxSize";
+
+    /**
+     * The default maximum size of the cache (256MB).
+     */
+    public static final long DEFAULT_MAX_SIZE = 256L * 1024L * 1024L;
+
+    static final String DATA_EXT = ".dat";
+    static final String INDEX_EXT = ".idx";
+    static final String LOCK_FILE = "cache.lock";
+
+    /**
+     * The age below which an unreferenced contents file is not deleted, because it may have been stored by another process
+     * whose index file has not yet been written.
+     */
+    static final long GRACE_PERIOD = 3600000L;
+
+    /**
+     * The time for which a thread waits for another thread's download of a URL to make progress, before it gives up and
+     * downloads the URL itself.
+     */
+    static final long STALL_TIMEOUT = 30000L;
+
+    private static URLCache instance;
+
+    /**
+     * Get the cache in the JSAF data directory.
+     */
+    public static synchronized URLCache getInstance() {
+	if (instance == null) {
+	    long maxSize = DEFAULT_MAX_SIZE;
+	    String s = System.getProperty(PROP_MAX_SIZE);
+	    if (s != null) {
+		try {
+		    maxSize = Math.max(0L, Long.parseLong(s));
+		} catch (NumberFormatException e) {
+		    Message.getLogger().warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+		}
+	    }
+	    instance = new URLCache(new File(JSAFSystem.getDataDirectory(), "url_cache"), maxSize);
+	}
+	return instance;
+    }
+
+    private File dir;
+    private long maxSize, size;
+    private LinkedHashMap<String, Entry> index;
+    private Map<String, Integer> refs;
+    private ConcurrentHashMap<String, Pending> inFlight;
+    private FileChannel lockChannel;
+    private AtomicLong hits, downloads, shared;
+
+    /**
+     * Create a cache in the specified directory, loading any entries that are already stored there.
+     */
+    public URLCache(File dir, long maxSize) {
+	this.dir = dir;
+	this.maxSize = maxSize;
+	size = 0L;
+	index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	refs = new HashMap<String, Integer>();
+	inFlight = new ConcurrentHashMap<String, Pending>();
+	hits = new AtomicLong(0);
+	downloads = new AtomicLong(0);
+	shared = new AtomicLong(0);
+	load();
+    }
+
+    /**
+     * Get the cached contents of a URL, downloading or revalidating them as necessary. If another thread is already doing
+     * so, the calling thread waits for it to finish, and shares the result.
+     */
+    public Entry get(URL url, LocLogger logger) throws IOException {
+	return open(url, logger).complete();
+    }
+
+    /**
+     * Open the contents of a URL, revalidating them as necessary. If the cached contents are valid, they are read from the
+     * cache. Otherwise, the contents are streamed from the URL as they are downloaded, and stored in the cache when the
+     * stream has been read to the end. If another thread is already downloading or revalidating the URL, the calling
+     * thread waits for it to finish, and shares the result.
+     */
+    public Download open(URL url, LocLogger logger) throws IOException {
+	String key = url.toString();
+	while (true) {
+	    Pending pending = new Pending(key);
+	    Pending existing = inFlight.putIfAbsent(key, pending);
+	    if (existing != null && (existing.owner == Thread.currentThread() || !existing.await())) {
+		//
+		// This thread has yet to finish reading the download in progress, or its reader has stalled, so do not wait
+		// for it (and do not take over its slot)
+		//
+		existing = null;
+		pending = new Pending(key);
+	    }
+	    if (existing == null) {
+		boolean started = false;
+		try {
+		    Download download = fetch(url, logger, pending);
+		    started = true;
+		    return download;
+		} finally {
+		    if (!started) {
+			pending.finish(null);
+		    }
+		}
+	    }
+	    shared.incrementAndGet();
+	    Entry entry = existing.getResult();
+	    if (entry != null) {
+		try {
+		    return new Download(entry);
+		} catch (FileNotFoundException e) {
+		    // evicted in the meantime, so try again
+		}
+	    }
+	}
+    }
+
+    /**
+     * Remove a URL from the cache.
+     *
+     * @return true if the URL was cached
+     */
+    public synchronized boolean remove(URL url) {
+	Entry entry = index.remove(url.toString());
+	if (entry == null) {
+	    return false;
+	}
+	FileLock lock = lock();
+	try {
+	    discard(entry);
+	} finally {
+	    unlock(lock);
+	}
+	return true;
+    }
+
+    /**
+     * Get the number of cached URLs.
+     */
+    public synchronized int getCount() {
+	return index.size();
+    }
+
+    /**
+     * Get the total size of the cached contents, in bytes.
+     */
+    public synchronized long getSize() {
+	return size;
+    }
+
+    /**
+     * Get the maximum size of the cached contents, in bytes.
+     */
+    public long getMaxSize() {
+	return maxSize;
+    }
+
+    /**
+     * Get the number of requests that were served from the cache without downloading the contents.
+     */
+    public long getHits() {
+	return hits.get();
+    }
+
+    /**
+     * Get the number of requests for which the contents were downloaded.
+     */
+    public long getDownloads() {
+	return downloads.get();
+    }
+
+    /**
+     * Get the number of requests that waited for a download or revalidation in progress on another thread.
+     */
+    public long getShared() {
+	return shared.get();
+    }
+
+    /**
+     * A cached URL.
+     */
+    public class Entry {
+	private String url, etag, checksum;
+	private long lastModified, contentLength, length;
+
+	Entry(String url, String etag, long lastModified, long contentLength, String checksum, long length) {
+	    this.url = url;
+	    this.etag = etag;
+	    this.lastModified = lastModified;
+	    this.contentLength = contentLength;
+	    this.checksum = checksum;
+	    this.length = length;
+	}
+
+	/**
+	 * Get the file containing the cached contents. The file is read-only, and may be deleted if the entry is evicted.
+	 */
+	public File getFile() {
+	    return new File(dir, checksum + DATA_EXT);
+	}
+
+	/**
+	 * Get the length of the (decompressed) contents.
+	 */
+	public long getLength() {
+	    return length;
+	}
+
+	/**
+	 * Get the SHA-1 checksum of the contents.
+	 */
+	public String getChecksum() {
+	    return checksum;
+	}
+
+	/**
+	 * Get the ETag of the response from which the contents were cached, or null.
+	 */
+	public String getETag() {
+	    return etag;
+	}
+
+	/**
+	 * Get the Last-Modified date of the response from which the contents were cached, or 0.
+	 */
+	public long getLastModified() {
+	    return lastModified;
+	}
+
+	// Private
+
+	private File getIndexFile() {
+	    return new File(dir, Checksum.getChecksum(url, Checksum.Algorithm.SHA1) + INDEX_EXT);
+	}
+    }
+
+    /**
+     * A stream of the contents of a URL: either of cached contents, or of contents that are being downloaded (and that are
+     * stored in the cache when the stream has been read to the end). If a download is closed before it has been read to the
+     * end, it is discarded.
+     */
+    public class Download extends InputStream {
+	private Entry entry;
+	private InputStream in;
+	private OutputStream out;
+	private File temp;
+	private MessageDigest digest;
+	private Pending pending;
+	private String key, etag;
+	private long lastModified, contentLength, length, count;
+	private boolean closed;
+
+	/**
+	 * Create a stream of cached contents.
+	 */
+	Download(Entry entry) throws FileNotFoundException {
+	    this.entry = entry;
+	    in = new FileInputStream(entry.getFile());
+	    length = entry.length;
+	    closed = false;
+	}
+
+	/**
+	 * Create a stream of contents being downloaded.
+	 *
+	 * @param length the length of the (decompressed) contents, or -1 if it is not known
+	 */
+	Download(Pending pending, URLConnection conn, InputStream in, File temp, long length) throws IOException {
+	    this.pending = pending;
+	    this.in = in;
+	    this.temp = temp;
+	    this.length = length;
+	    key = pending.key;
+	    etag = conn.getHeaderField("ETag");
+	    lastModified = conn.getLastModified();
+	    contentLength = getContentLength(conn);
+	    try {
+		digest = MessageDigest.getInstance("SHA-1");
+	    } catch (NoSuchAlgorithmException e) {
+		throw new RuntimeException(e);
+	    }
+	    out = new FileOutputStream(temp);
+	    count = 0L;
+	    closed = false;
+	}
+
+	/**
+	 * Get the cache entry of the contents, or null if they are still being downloaded.
+	 */
+	public Entry getEntry() {
+	    return entry;
+	}
+
+	/**
+	 * Read the rest of the contents, close the stream, and get the cache entry of the contents.
+	 */
+	public Entry complete() throws IOException {
+	    try {
+		if (entry == null) {
+		    byte[] buff = BufferPool.borrow(65536);
+		    try {
+			while (read(buff) != -1) {
+			}
+		    } finally {
+			BufferPool.release(buff);
+		    }
+		}
+		return entry;
+	    } finally {
+		close();
+	    }
+	}
+
+	/**
+	 * Get the length of the (decompressed) contents, or -1 if it is not known until they have been downloaded.
+	 */
+	public long getLength() {
+	    return length;
+	}
+
+	// Implement InputStream
+
+	@Override
+	public int read() throws IOException {
+	    byte[] buff = new byte[1];
+	    int len = 0;
+	    while ((len = read(buff, 0, 1)) == 0) {
+	    }
+	    return len == -1 ? -1 : buff[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buff, int offset, int len) throws IOException {
+	    if (pending == null) {
+		return in.read(buff, offset, len);
+	    }
+	    boolean ok = false;
+	    try {
+		int n = in.read(buff, offset, len);
+		if (n > 0) {
+		    digest.update(buff, offset, n);
+		    out.write(buff, offset, n);
+		    count += n;
+		    pending.active = System.currentTimeMillis();
+		} else if (n == -1) {
+		    commit();
+		}
+		ok = true;
+		return n;
+	    } finally {
+		if (!ok) {
+		    abort();
+		}
+	    }
+	}
+
+	@Override
+	public int available() throws IOException {
+	    return in.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+	    if (!closed) {
+		closed = true;
+		if (pending == null) {
+		    in.close();
+		} else {
+		    abort();
+		}
+	    }
+	}
+
+	/**
+	 * Discard an incomplete download that was never closed, so that it does not hold the URL's slot.
+	 */
+	@Override
+	protected void finalize() {
+	    abort();
+	}
+
+	// Private
+
+	/**
+	 * Store the downloaded contents in the cache.
+	 */
+	private void commit() throws IOException {
+	    Pending p = pending;
+	    pending = null;
+	    Streams.close(in);
+	    out.close();
+	    in = new ByteArrayInputStream(new byte[0]);
+	    Entry committed = null;
+	    try {
+		committed = store(new Entry(key, etag, lastModified, contentLength, toHex(digest.digest()), count), temp);
+		entry = committed;
+		length = count;
+	    } finally {
+		if (temp.exists()) {
+		    TempFiles.delete(temp);
+		}
+		p.finish(committed);
+	    }
+	}
+
+	/**
+	 * Discard an incomplete download.
+	 */
+	private void abort() {
+	    Pending p = pending;
+	    if (p != null) {
+		pending = null;
+		Streams.close(in);
+		Streams.close(out);
+		TempFiles.delete(temp);
+		p.finish(null);
+	    }
+	}
+    }
+
+    // Private
+
+    /**
+     * Revalidate the URL, and open its cached contents, or start downloading it. If the contents are cached and valid, the
+     * pending operation is finished before returning; otherwise, it is finished by the returned Download.
+     */
+    private Download fetch(URL url, LocLogger logger, Pending pending) throws IOException {
+	String key = url.toString();
+	Entry cached = null;
+	synchronized(this) {
+	    cached = index.get(key);
+	    if (cached != null && !cached.getFile().exists()) {
+		index.remove(key);
+		discard(cached);
+		cached = null;
+	    }
+	}
+	URLConnection conn = url.openConnection();
+	if (cached != null) {
+	    if (cached.etag != null) {
+		conn.setRequestProperty("If-None-Match", cached.etag);
+	    }
+	    if (cached.lastModified != 0) {
+		conn.setIfModifiedSince(cached.lastModified);
+	    }
+	}
+	conn.connect();
+	String etag = conn.getHeaderField("ETag");
+	long lastModified = conn.getLastModified();
+	long contentLength = getContentLength(conn);
+	if (cached != null) {
+	    boolean valid = false;
+	    if (conn instanceof HttpURLConnection && ((HttpURLConnection)conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+		valid = true;
+	    } else {
+		if (etag != null) {
+		    valid = etag.equals(cached.etag);
+		} else if (lastModified != 0) {
+		    valid = lastModified == cached.lastModified;
+		}
+		if (contentLength != -1 && cached.contentLength != -1 && contentLength != cached.contentLength) {
+		    //
+		    // The raw size has changed, e.g., for a file modified within the resolution of its timestamp
+		    //
+		    valid = false;
+		}
+	    }
+	    if (valid) {
+		Download download = null;
+		try {
+		    download = new Download(cached);
+		} catch (FileNotFoundException e) {
+		    //
+		    // The contents were evicted (e.g., by another process), so download them again
+		    //
+		    synchronized(this) {
+			if (index.get(key) == cached) {
+			    index.remove(key);
+			    discard(cached);
+			}
+		    }
+		}
+		if (conn instanceof HttpURLConnection) {
+		    ((HttpURLConnection)conn).disconnect();
+		} else {
+		    Streams.close(conn.getInputStream());
+		}
+		if (download == null) {
+		    return fetch(url, logger, pending);
+		}
+		touch(cached);
+		hits.incrementAndGet();
+		logger.debug(Message.STATUS_URL_CACHE_HIT, key, cached.getFile().toString());
+		pending.finish(cached);
+		return download;
+	    }
+	}
+	downloads.incrementAndGet();
+	File temp = TempFiles.create("url", ".tmp", dir, null);
+	boolean started = false;
+	try {
+	    logger.debug(Message.STATUS_URL_CACHE, key, temp.toString());
+	    BufferedInputStream raw = new BufferedInputStream(conn.getInputStream());
+	    long length = Streams.detect(raw) == null ? contentLength : -1L;
+	    Download download = new Download(pending, conn, Streams.decompress(raw), temp, length);
+	    started = true;
+	    return download;
+	} finally {
+	    if (!started) {
+		TempFiles.delete(temp);
+	    }
+	}
+    }
+
+    /**
+     * Store downloaded contents in the cache.
+     */
+    private synchronized Entry store(Entry entry, File temp) throws IOException {
+	FileLock lock = lock();
+	try {
+	    //
+	    // The index file is written before the contents file is moved into place, so that (while the directory is not
+	    // locked) another process does not mistake the contents for an unreferenced file.
+	    //
+	    save(entry);
+	    File data = entry.getFile();
+	    if (data.exists() && data.length() == entry.length) {
+		//
+		// Identical contents are already stored (content-addressing)
+		//
+		TempFiles.delete(temp);
+	    } else {
+		data.delete();
+		if (!temp.renameTo(data)) {
+		    entry.getIndexFile().delete();
+		    Entry old = index.remove(entry.url);
+		    if (old != null) {
+			discard(old);
+		    }
+		    throw new IOException(Message.getMessage(Message.ERROR_IO, data.toString(),
+							     Message.getMessage(Message.ERROR_IO_RENAME, temp.toString())));
+		}
+		TempFiles.delete(temp);
+	    }
+	    reference(entry);
+	    Entry old = index.put(entry.url, entry);
+	    if (old != null) {
+		discard(old);
+	    }
+	    evict(entry);
+	    return entry;
+	} finally {
+	    unlock(lock);
+	}
+    }
+
+    /**
+     * Load the stored index files, in order of last use, and delete any contents files that are not referenced.
+     */
+    private synchronized void load() {
+	if (!dir.exists()) {
+	    dir.mkdirs();
+	}
+	FileLock lock = lock();
+	try {
+	    load(dir.listFiles());
+	} finally {
+	    unlock(lock);
+	}
+    }
+
+    private void load(File[] files) {
+	if (files == null) {
+	    return;
+	}
+	List<File> indexFiles = new ArrayList<File>();
+	for (File file : files) {
+	    if (file.getName().endsWith(INDEX_EXT)) {
+		indexFiles.add(file);
+	    }
+	}
+	Collections.sort(indexFiles, new Comparator<File>() {
+	    public int compare(File f1, File f2) {
+		long diff = f1.lastModified() - f2.lastModified();
+		return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+	    }
+	});
+	for (File file : indexFiles) {
+	    Entry entry = null;
+	    try {
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+		    props.load(in);
+		} finally {
+		    in.close();
+		}
+		entry = new Entry(props.getProperty("url"), props.getProperty("etag"),
+				  Long.parseLong(props.getProperty("lastModified", "0")),
+				  Long.parseLong(props.getProperty("contentLength", "-1")), props.getProperty("checksum"),
+				  Long.parseLong(props.getProperty("length", "-1")));
+	    } catch (IOException e) {
+	    } catch (NumberFormatException e) {
+	    }
+	    if (entry == null || entry.url == null || entry.checksum == null || entry.getFile().length() != entry.length) {
+		file.delete();
+	    } else {
+		index.put(entry.url, entry);
+		reference(entry);
+	    }
+	}
+	long cutoff = System.currentTimeMillis() - GRACE_PERIOD;
+	for (File file : files) {
+	    String name = file.getName();
+	    if (name.endsWith(DATA_EXT) && !refs.containsKey(name.substring(0, name.length() - DATA_EXT.length())) &&
+		file.lastModified() < cutoff) {
+		file.delete();
+	    }
+	}
+	evict(null);
+    }
+
+    /**
+     * Lock the cache directory against other processes.
+     *
+     * @return null if the directory could not be locked (e.g., because the filesystem does not support locking)
+     */
+    private FileLock lock() {
+	try {
+	    if (lockChannel == null) {
+		lockChannel = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel();
+	    }
+	    return lockChannel.lock();
+	} catch (IOException e) {
+	    return null;
+	} catch (OverlappingFileLockException e) {
+	    return null;
+	}
+    }
+
+    private static void unlock(FileLock lock) {
+	if (lock != null) {
+	    try {
+		lock.release();
+	    } catch (IOException e) {
+	    }
+	}
+    }
+
+    /**
+     * Get the raw length of the contents of a connection, from its Content-Length header.
+     *
+     * @return -1 if the length is not known
+     */
+    private static long getContentLength(URLConnection conn) {
+	try {
+	    String s = conn.getHeaderField("Content-Length");
+	    if (s != null) {
+		return Long.parseLong(s.trim());
+	    }
+	} catch (NumberFormatException e) {
+	}
+	return -1L;
+    }
+
+    /**
+     * A download or revalidation in progress, whose result is the cache entry (or null, if the download was abandoned).
+     */
+    class Pending extends FutureTask<Entry> {
+	final String key;
+	final Thread owner;
+	volatile long active;
+
+	Pending(String key) {
+	    super(new Callable<Entry>() {
+		public Entry call() {
+		    return null;
+		}
+	    });
+	    this.key = key;
+	    owner = Thread.currentThread();
+	    active = System.currentTimeMillis();
+	}
+
+	void finish(Entry entry) {
+	    inFlight.remove(key, this);
+	    set(entry);
+	}
+
+	/**
+	 * Wait for the operation to finish, for as long as it makes progress.
+	 *
+	 * @return false if it has stalled for STALL_TIMEOUT
+	 */
+	boolean await() throws IOException {
+	    try {
+		while (true) {
+		    try {
+			get(1000L, TimeUnit.MILLISECONDS);
+			return true;
+		    } catch (TimeoutException e) {
+			if (System.currentTimeMillis() - active > STALL_TIMEOUT) {
+			    return false;
+			}
+		    }
+		}
+	    } catch (InterruptedException e) {
+		throw new InterruptedIOException();
+	    } catch (ExecutionException e) {
+		throw new IOException(e.getCause());
+	    }
+	}
+
+	/**
+	 * Get the result of a finished operation.
+	 */
+	Entry getResult() throws IOException {
+	    try {
+		return get();
+	    } catch (InterruptedException e) {
+		throw new InterruptedIOException();
+	    } catch (ExecutionException e) {
+		throw new IOException(e.getCause());
+	    }
+	}
+    }
+
+    /**
+     * Write the index file for an entry.
+     */
+    private void save(Entry entry) throws IOException {
+	Properties props = new Properties();
+	props.setProperty("url", entry.url);
+	if (entry.etag != null) {
+	    props.setProperty("etag", entry.etag);
+	}
+	props.setProperty("lastModified", Long.toString(entry.lastModified));
+	props.setProperty("contentLength", Long.toString(entry.contentLength));
+	props.setProperty("checksum", entry.checksum);
+	props.setProperty("length", Long.toString(entry.length));
+	OutputStream out = new FileOutputStream(entry.getIndexFile());
+	try {
+	    props.store(out, null);
+	} finally {
+	    out.close();
+	}
+    }
+
+    /**
+     * Mark an entry as most-recently used, in memory and on disk.
+     */
+    private synchronized void touch(Entry entry) {
+	index.get(entry.url);
+	entry.getIndexFile().setLastModified(System.currentTimeMillis());
+    }
+
+    private void reference(Entry entry) {
+	Integer count = refs.get(entry.checksum);
+	if (count == null) {
+	    refs.put(entry.checksum, 1);
+	    size += entry.length;
+	} else {
+	    refs.put(entry.checksum, count + 1);
+	}
+    }
+
+    /**
+     * Release an entry that has been removed from the index, deleting its index file (unless it has been replaced) and its
+     * contents (unless they are shared with another entry).
+     */
+    private void discard(Entry entry) {
+	if (!index.containsKey(entry.url)) {
+	    entry.getIndexFile().delete();
+	}
+	Integer count = refs.get(entry.checksum);
+	if (count == null) {
+	    return;
+	} else if (count > 1) {
+	    refs.put(entry.checksum, count - 1);
+	} else {
+	    refs.remove(entry.checksum);
+	    size -= entry.length;
+	    entry.getFile().delete();
+	}
+    }
+
+    /**
+     * Evict least-recently-used entries (other than the specified entry) until the cache is within its size limit. The
+     * caller must hold the directory lock.
+     */
+    private void evict(Entry keep) {
+	Iterator<Entry> iter = index.values().iterator();
+	while (size > maxSize && iter.hasNext()) {
+	    Entry entry = iter.next();
+	    if (entry != keep) {
+		iter.remove();
+		discard(entry);
+	    }
+	}
+    }
+
+    private static String toHex(byte[] buff) {
+	StringBuilder sb = new StringBuilder();
+	for (int i=0; i < buff.length; i++) {
+	    sb.append(Integer.toString((buff[i]&0xff) + 0x100, 16).substring(1));
+	}
+	return sb.toString();
+    }
+}
@@ -7,8 +7,12 @@ import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 import java.util.StringTokenizer;
 
@@ -18,6 +22,9 @@ import jsaf.util.Strings;
  * InputStreams can contain characters that are illegal in XML. The XMLFilterStream replaces those characters with equivalent Unicode
  * escape sequences.
  *
+ * Since 1.7, the stream is decoded, filtered and re-encoded in bulk using NIO buffers; for UTF-8, runs of legal ASCII bytes
+ * are copied straight through without being decoded at all.
+ *
  * @author David A. Solin
  * @since 1.6.10
  */
@@ -26,6 +33,21 @@ public class XMLFilterStream extends InputStream {
     private static final byte[] U16	= new byte[] {0x00, 0x3C, 0x00, 0x3F}; // .<.?
     private static final byte[] U16LE	= new byte[] {0x3C, 0x00, 0x3F, 0x00}; // <.?.
 
+    /**
+     * Validity table for bytes (indexed as unsigned values): true if the byte is an ASCII character that is legal in XML.
+     */
+    private static final boolean[] LEGAL_ASCII = new boolean[256];
+    static {
+	for (int i=0x20; i < 128; i++) {
+	    LEGAL_ASCII[i] = true;
+	}
+	LEGAL_ASCII[0x9] = true;
+	LEGAL_ASCII[0xA] = true;
+	LEGAL_ASCII[0xD] = true;
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     public static void main(String[] argv) throws Exception {
 	Streams.copy(filterStream(new java.io.FileInputStream(argv[0]), true), System.out, false);
     }
@@ -111,7 +133,7 @@ public class XMLFilterStream extends InputStream {
 	}
 
 	if (charset != null || force) {
-	    return new XMLFilterStream(new InputStreamReader(in, charset == null ? Strings.UTF8 : charset));
+	    return new XMLFilterStream(in, charset == null ? Strings.UTF8 : charset);
 	} else {
 	    //
 	    // Pass-thru (not XML or force-filtered)
@@ -122,84 +144,243 @@ public class XMLFilterStream extends InputStream {
 
     // Overrides for InputStream
 
-    private InputStreamReader reader;
+    static final int RAW_SIZE = 8192;
+    static final int CHARS_SIZE = 1024;
+    static final int ESCAPE_LEN = 8; // \\Uxxxx;
+
+    private InputStream in;
     private Charset charset;
-    private byte[] buff = null;
-    private int ptr = 0;
-    private boolean closed=false, eof=false;
+    private boolean utf8, closed=false, eof=false, finished=false;
+    private CharsetDecoder decoder;
+    private CharsetEncoder encoder;
+    private ByteBuffer raw, out;
+    private CharBuffer chars, pending;
+    private byte[] single = new byte[1];
 
     @Override
     public int read() throws IOException {
-	if (closed || eof) return -1;
-	byte[] ch = new byte[1];
-	if (read(ch, 0, 1) == -1) {
+	if (read(single, 0, 1) == -1) {
 	    return -1;
 	} else {
-	    return (int)ch[0];
+	    return single[0] & 0xFF;
 	}
     }
 
     @Override
     public int read(byte[] buffer) throws IOException {
-	if (closed || eof) return -1;
 	return read(buffer, 0, buffer.length);
     }
 
     @Override
     public int read(byte[] buffer, int offset, int length) throws IOException {
-	if (closed || eof) return -1;
-	if (buff == null) {
-	    char[] cbuff = new char[1024];
-	    int len = reader.read(cbuff, 0, cbuff.length);
-	    if (len == -1) {
-		eof = true;
-		return -1;
-	    }
-	    StringBuilder sb = new StringBuilder();
-	    for (int i=0; i < len; i++) {
-		char ch = cbuff[i];
-		switch(ch) {
-		  case 0x9:
-		  case 0xA:
-		  case 0xD:
-		    sb.append(ch);
-		    break;
-		  default:
-		    if (((ch >= 0x20) && (ch <= 0xD7FF)) || ((ch >= 0xE000) && (ch <= 0xFFFD)) || ((ch >= 0x010000) && (ch <= 0x10FFFF))) {
-			sb.append(ch);
-		    } else {
-			sb.append("\\\\U").append(Integer.toString(ch + 0x10000, 16).substring(1)).append(";");
-		    }
-		    break;
+	if (offset < 0 || length < 0 || length > buffer.length - offset) {
+	    throw new IndexOutOfBoundsException();
+	} else if (closed) {
+	    return -1;
+	} else if (length == 0) {
+	    return 0;
+	}
+	while (!out.hasRemaining()) {
+	    if (pending.hasRemaining()) {
+		out.clear();
+		encoder.encode(pending, out, false);
+		out.flip();
+	    } else if (utf8) {
+		int len = passThrough(buffer, offset, length);
+		if (len > 0) {
+		    return len;
+		} else if (!decode()) {
+		    return -1;
 		}
+	    } else if (!decode()) {
+		return -1;
 	    }
-	    ptr = 0;
-	    buff = sb.toString().getBytes(charset);
-	    return read(buffer, offset, length);
-	} else {
-	    length = Math.min(buffer.length - offset, length);
-	    int len = 0;
-	    for (int i=0; i < length && ptr < buff.length; i++) {
-		buffer[offset++] = buff[ptr++];
-		len++;
-	    }
-	    if (ptr == buff.length) {
-		buff = null;
-	    }
-	    return len;
 	}
+	int len = Math.min(length, out.remaining());
+	out.get(buffer, offset, len);
+	return len;
+    }
+
+    @Override
+    public int available() throws IOException {
+	return out.remaining();
     }
 
     @Override
     public void close() throws IOException {
-	reader.close();
+	in.close();
 	closed = true;
     }
 
     // Private
 
-    private XMLFilterStream(InputStreamReader reader) {
-	this.reader = reader;
-	this.charset = Charset.forName(reader.getEncoding());;
+    private XMLFilterStream(InputStream in, Charset charset) {
+	this.in = in;
+	this.charset = charset;
+	utf8 = Strings.UTF8.equals(charset);
+	decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	raw = ByteBuffer.allocate(RAW_SIZE);
+	raw.flip();
+	chars = CharBuffer.allocate(CHARS_SIZE);
+	pending = CharBuffer.allocate(CHARS_SIZE * ESCAPE_LEN);
+	pending.flip();
+	out = ByteBuffer.allocate((int)Math.ceil(pending.capacity() * encoder.maxBytesPerChar()));
+	out.flip();
+    }
+
+    /**
+     * Read more data into the raw buffer, preserving any unconsumed data.
+     */
+    private void fill() throws IOException {
+	raw.compact();
+	try {
+	    int len = in.read(raw.array(), raw.position(), raw.remaining());
+	    if (len == -1) {
+		eof = true;
+	    } else {
+		raw.position(raw.position() + len);
+	    }
+	} finally {
+	    raw.flip();
+	}
+    }
+
+    /**
+     * UTF-8 fast path: pass a run of legal ASCII bytes through to the caller's buffer. When there is no buffered input, the
+     * underlying stream is read directly into the caller's buffer, and only the bytes following the run are buffered.
+     *
+     * @return the number of bytes passed through
+     */
+    private int passThrough(byte[] buffer, int offset, int length) throws IOException {
+	if (raw.hasRemaining()) {
+	    byte[] data = raw.array();
+	    int start = raw.position();
+	    int len = scan(data, start, Math.min(raw.limit(), start + length)) - start;
+	    if (len > 0) {
+		System.arraycopy(data, start, buffer, offset, len);
+		raw.position(start + len);
+	    }
+	    return len;
+	} else if (eof) {
+	    return 0;
+	}
+	int len = in.read(buffer, offset, Math.min(length, raw.capacity()));
+	if (len == -1) {
+	    eof = true;
+	    return 0;
+	}
+	int end = offset + len;
+	int i = scan(buffer, offset, end);
+	if (i < end) {
+	    raw.clear();
+	    raw.put(buffer, i, end - i);
+	    raw.flip();
+	}
+	return i - offset;
+    }
+
+    /**
+     * Find the end of the run of legal ASCII bytes starting at from.
+     */
+    private static int scan(byte[] data, int from, int to) {
+	int i = from;
+	while (i < to && LEGAL_ASCII[data[i] & 0xFF]) {
+	    i++;
+	}
+	return i;
+    }
+
+    /**
+     * Decode and filter the next characters, so that they are pending encoding. At the end of the input, the encoder is
+     * flushed into the output buffer.
+     *
+     * @return false if there is no more data
+     */
+    private boolean decode() throws IOException {
+	while (true) {
+	    if (!raw.hasRemaining() && !eof) {
+		fill();
+	    }
+	    if (!raw.hasRemaining() && eof) {
+		if (finished) {
+		    return false;
+		}
+		finished = true;
+		chars.clear();
+		decoder.decode(raw, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		filter();
+		out.clear();
+		encoder.encode(pending, out, true);
+		encoder.flush(out);
+		out.flip();
+		return true;
+	    }
+	    ByteBuffer segment = raw;
+	    boolean endOfInput = eof;
+	    if (utf8) {
+		//
+		// A UTF-8 sequence ends before the next ASCII byte, so a run of non-ASCII bytes followed by an ASCII byte
+		// can be decoded completely. An ASCII byte that reaches this point is an illegal control character.
+		//
+		byte[] data = raw.array();
+		int i = raw.position() + 1;
+		if (data[raw.position()] < 0) {
+		    while (i < raw.limit() && data[i] < 0) {
+			i++;
+		    }
+		}
+		segment = raw.duplicate();
+		segment.limit(i);
+		endOfInput = eof || i < raw.limit();
+	    }
+	    chars.clear();
+	    decoder.decode(segment, chars, endOfInput);
+	    if (endOfInput) {
+		decoder.flush(chars);
+		decoder.reset();
+	    }
+	    chars.flip();
+	    raw.position(segment.position());
+	    if (chars.hasRemaining()) {
+		filter();
+		return true;
+	    } else if (raw.hasRemaining()) {
+		//
+		// There is only an incomplete sequence in the raw buffer
+		//
+		fill();
+	    }
+	}
+    }
+
+    /**
+     * Copy the decoded characters to the pending buffer, escaping any characters that are illegal in XML.
+     */
+    private void filter() {
+	pending.clear();
+	char[] src = chars.array();
+	char[] dest = pending.array();
+	int j = 0;
+	for (int i=chars.position(); i < chars.limit(); i++) {
+	    char ch = src[i];
+	    if (ch < 128 ? LEGAL_ASCII[ch] : (ch <= 0xD7FF || (ch >= 0xE000 && ch <= 0xFFFD))) {
+		dest[j++] = ch;
+	    } else {
+		dest[j++] = '\\';
+		dest[j++] = '\\';
+		dest[j++] = 'U';
+		dest[j++] = HEX[(ch >> 12) & 0xF];
+		dest[j++] = HEX[(ch >> 8) & 0xF];
+		dest[j++] = HEX[(ch >> 4) & 0xF];
+		dest[j++] = HEX[ch & 0xF];
+		dest[j++] = ';';
+	    }
+	}
+	chars.position(chars.limit());
+	pending.position(j);
+	pending.flip();
     }
 }
@@ -0,0 +1,218 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.protocol.zip;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import jsaf.JSAFSystem;
+
+/**
+ * A cache of open ZipFile handles for local archives, so that entries can be found using the archives' central directories
+ * (rather than by scanning the archives from the start).
+ *
+ * Handles are reference-counted: a reference is acquired for each entry stream, and released when the stream is closed.
+ * Handles that are no longer referenced are kept open for re-use, but at most MAX_IDLE of them (the least-recently-used
+ * are closed first), and none for longer than IDLE_TIMEOUT. A handle is not re-used once its archive has been modified.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+class ZipArchives {
+    /**
+     * The maximum number of unreferenced handles that are kept open.
+     */
+    static final int MAX_IDLE = 16;
+
+    /**
+     * The time after which an unreferenced handle is closed, in milliseconds.
+     */
+    static final long IDLE_TIMEOUT = 60000L;
+
+    private static final LinkedHashMap<File, Handle> HANDLES = new LinkedHashMap<File, Handle>(16, 0.75f, true);
+    private static int idle = 0;
+    private static boolean started = false;
+
+    /**
+     * Acquire a reference to a handle for an archive, opening it if necessary.
+     */
+    static Handle acquire(File file) throws IOException {
+	file = file.getAbsoluteFile();
+	synchronized(HANDLES) {
+	    Handle handle = HANDLES.get(file);
+	    if (handle != null && handle.isStale()) {
+		HANDLES.remove(file);
+		handle.stale = true;
+		if (handle.refs == 0) {
+		    idle--;
+		    handle.close();
+		}
+		handle = null;
+	    }
+	    if (handle == null) {
+		handle = new Handle(file);
+		HANDLES.put(file, handle);
+		start();
+	    } else if (handle.refs == 0) {
+		idle--;
+	    }
+	    handle.refs++;
+	    return handle;
+	}
+    }
+
+    /**
+     * Get the number of open handles.
+     */
+    static int getOpenCount() {
+	synchronized(HANDLES) {
+	    return HANDLES.size();
+	}
+    }
+
+    /**
+     * Close the unreferenced handles that have been idle for longer than IDLE_TIMEOUT.
+     */
+    static void expire() {
+	long cutoff = System.currentTimeMillis() - IDLE_TIMEOUT;
+	synchronized(HANDLES) {
+	    Iterator<Handle> iter = HANDLES.values().iterator();
+	    while (iter.hasNext()) {
+		Handle handle = iter.next();
+		if (handle.refs == 0 && handle.released < cutoff) {
+		    iter.remove();
+		    idle--;
+		    handle.close();
+		}
+	    }
+	}
+    }
+
+    /**
+     * An open archive.
+     */
+    static class Handle {
+	private File file;
+	private long lastModified, length, released;
+	private ZipFile zip;
+	private int refs;
+	private boolean stale;
+
+	Handle(File file) throws IOException {
+	    this.file = file;
+	    lastModified = file.lastModified();
+	    length = file.length();
+	    zip = new ZipFile(file);
+	    refs = 0;
+	    stale = false;
+	}
+
+	/**
+	 * Look up an entry in the central directory.
+	 *
+	 * @return null if there is no such entry
+	 */
+	ZipEntry getEntry(String name) {
+	    return zip.getEntry(name);
+	}
+
+	/**
+	 * Get a stream of an entry's data, which releases the caller's reference to the handle when it is closed.
+	 */
+	InputStream getInputStream(ZipEntry entry) throws IOException {
+	    return new EntryStream(zip.getInputStream(entry));
+	}
+
+	/**
+	 * Release a reference to the handle.
+	 */
+	void release() {
+	    synchronized(HANDLES) {
+		if (--refs == 0) {
+		    if (stale) {
+			close();
+		    } else {
+			released = System.currentTimeMillis();
+			idle++;
+			evict();
+		    }
+		}
+	    }
+	}
+
+	// Private
+
+	private boolean isStale() {
+	    return stale || file.lastModified() != lastModified || file.length() != length;
+	}
+
+	private void close() {
+	    try {
+		zip.close();
+	    } catch (IOException e) {
+	    }
+	}
+
+	/**
+	 * An entry stream, holding a reference to the handle until it is closed.
+	 */
+	class EntryStream extends FilterInputStream {
+	    private boolean closed = false;
+
+	    EntryStream(InputStream in) {
+		super(in);
+	    }
+
+	    @Override
+	    public void close() throws IOException {
+		if (!closed) {
+		    closed = true;
+		    try {
+			super.close();
+		    } finally {
+			release();
+		    }
+		}
+	    }
+	}
+    }
+
+    // Private
+
+    /**
+     * Close the least-recently-used unreferenced handles, until there are no more than MAX_IDLE of them.
+     */
+    private static void evict() {
+	Iterator<Handle> iter = HANDLES.values().iterator();
+	while (idle > MAX_IDLE && iter.hasNext()) {
+	    Handle handle = iter.next();
+	    if (handle.refs == 0) {
+		iter.remove();
+		idle--;
+		handle.close();
+	    }
+	}
+    }
+
+    /**
+     * Start the task that closes idle handles.
+     */
+    private static void start() {
+	if (!started) {
+	    started = true;
+	    JSAFSystem.scheduleTask(new Runnable() {
+		public void run() {
+		    expire();
+		}
+	    }, IDLE_TIMEOUT, IDLE_TIMEOUT);
+	}
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.protocol.zip;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * An index of the uncompressed sizes and CRC-32 checksums of the entries in ZIP archives, which is filled in as a
+ * by-product of reading the archives. When an entry was streamed into an archive, its size is only recorded after its
+ * data (in a data descriptor), so without the index, the entry would have to be decompressed once to measure it, and again
+ * to read it.
+ *
+ * The index of an archive is discarded when the archive's last-modified time changes. Indexes are kept for a limited
+ * number of (least-recently-used) archives.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+class ZipIndex {
+    /**
+     * The maximum number of archives for which indexes are kept.
+     */
+    static final int MAX_ARCHIVES = 64;
+
+    private static final LinkedHashMap<String, ZipIndex> INDEXES = new LinkedHashMap<String, ZipIndex>(16, 0.75f, true);
+
+    /**
+     * Get the index for an archive.
+     *
+     * @param lastModified the last-modified time of the archive, or 0 if it is unknown (in which case a new, empty index
+     *                     is returned)
+     */
+    static ZipIndex get(URL archive, long lastModified) {
+	if (lastModified == 0) {
+	    return new ZipIndex(lastModified);
+	}
+	String key = archive.toString();
+	synchronized(INDEXES) {
+	    ZipIndex index = INDEXES.get(key);
+	    if (index == null || index.lastModified != lastModified) {
+		index = new ZipIndex(lastModified);
+		INDEXES.put(key, index);
+		if (INDEXES.size() > MAX_ARCHIVES) {
+		    Iterator<String> iter = INDEXES.keySet().iterator();
+		    iter.next();
+		    iter.remove();
+		}
+	    }
+	    return index;
+	}
+    }
+
+    private long lastModified;
+    private Map<String, long[]> entries;
+
+    /**
+     * Record the size and CRC of an entry, if they are known.
+     */
+    void record(ZipEntry entry) {
+	if (entry.getSize() >= 0) {
+	    entries.put(entry.getName(), new long[] {entry.getSize(), entry.getCrc()});
+	}
+    }
+
+    /**
+     * Get the uncompressed size of an entry.
+     *
+     * @return -1 if the size is not known
+     */
+    long getSize(String name) {
+	long[] info = entries.get(name);
+	return info == null ? -1L : info[0];
+    }
+
+    /**
+     * Get the CRC-32 checksum of an entry's uncompressed data.
+     *
+     * @return -1 if the checksum is not known
+     */
+    long getCrc(String name) {
+	long[] info = entries.get(name);
+	return info == null ? -1L : info[1];
+    }
+
+    // Private
+
+    private ZipIndex(long lastModified) {
+	this.lastModified = lastModified;
+	entries = new ConcurrentHashMap<String, long[]>();
+    }
+}
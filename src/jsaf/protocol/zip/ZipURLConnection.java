@@ -3,29 +3,35 @@
 
 package jsaf.protocol.zip;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import jsaf.io.SpillBuffer;
 import jsaf.io.Streams;
 
 /**
  * URLConnection subclass for generic ZIP files.  Only supports read requests.
  *
+ * Entries of local archives are found using the archive's central directory (see ZipArchives); other archives are scanned
+ * from the start. A local archive is only held open by the connection while a stream returned by getInputStream is open.
+ *
  * @author David A. Solin
  * @version %I% %G%
  * @since 1.0.1
  */
 class ZipURLConnection extends URLConnection {
     private URL innerURL;
+    private File archive;
     private InputStream in;
-    private int length;
+    private long length;
     private String path;
 
     ZipURLConnection(URL url) throws MalformedURLException {
@@ -47,24 +53,50 @@ class ZipURLConnection extends URLConnection {
 
     @Override
     public void connect() throws IOException {
-	ZipInputStream zin = new ZipInputStream(innerURL.openStream());
-	ZipEntry entry = advanceTo(zin, path);
-	length = (int)entry.getSize();
-	if (length <= 0) {
+	if (connected) {
+	    return;
+	}
+	if ("file".equals(innerURL.getProtocol())) {
 	    //
-	    // We need to determine the uncompressed size
+	    // Look up the entry's size in the archive's central directory. The entry is opened by getInputStream.
 	    //
+	    archive = toFile(innerURL);
+	    ZipArchives.Handle handle = ZipArchives.acquire(archive);
 	    try {
-		SizeStream out = new SizeStream();
-		Streams.copy(zin, out);
-		length = out.size();
+		length = getEntry(handle).getSize();
 	    } finally {
+		handle.release();
+	    }
+	    connected = true;
+	    return;
+	}
+	URLConnection conn = innerURL.openConnection();
+	ZipIndex index = ZipIndex.get(innerURL, conn.getLastModified());
+	ZipInputStream zin = new ZipInputStream(conn.getInputStream());
+	try {
+	    ZipEntry entry = advanceTo(zin, path, index);
+	    length = entry.getSize();
+	    if (length < 0) {
+		length = index.getSize(path);
+	    }
+	    if (length < 0) {
+		//
+		// The size is only recorded after the entry data, so buffer the data while determining its size, rather than
+		// decompressing it twice.
+		//
+		SpillBuffer buff = new SpillBuffer(SPILL_THRESHOLD, null);
+		Streams.copy(zin, buff, true);
+		index.record(entry);
+		length = buff.size();
+		in = buff.getInputStream();
+	    } else {
+		in = zin;
+	    }
+	} finally {
+	    if (in != zin) {
 		Streams.close(zin);
 	    }
-	    zin = new ZipInputStream(innerURL.openStream());
-	    advanceTo(zin, path);
 	}
-	in = zin;
 	connected = true;
     }
 
@@ -73,11 +105,29 @@ class ZipURLConnection extends URLConnection {
 	if (!connected) {
 	    connect();
 	}
+	if (in == null && archive != null) {
+	    //
+	    // The stream holds a reference to the archive's handle until it is closed
+	    //
+	    ZipArchives.Handle handle = ZipArchives.acquire(archive);
+	    try {
+		in = handle.getInputStream(getEntry(handle));
+	    } finally {
+		if (in == null) {
+		    handle.release();
+		}
+	    }
+	}
 	return in;
     }
 
     @Override
     public int getContentLength() {
+	return (int)getContentLengthLong();
+    }
+
+    //@Override -- NB: override annotation is invalid when compiling with JDK 1.6
+    public long getContentLengthLong() {
 	try {
 	    if (!connected) {
 		connect();
@@ -90,29 +140,49 @@ class ZipURLConnection extends URLConnection {
 
     // Private
 
-    private static ZipEntry advanceTo(ZipInputStream zin, String name) throws IOException {
-	ZipEntry entry;
-	while ((entry = zin.getNextEntry()) != null) {
-	    if (entry.getName().equals(name)) {
-		return entry;
-	    }
+    /**
+     * Entries larger than this are buffered in a temporary file, when they must be buffered.
+     */
+    private static final long SPILL_THRESHOLD = 1048576L;
+
+    /**
+     * Look up the entry in an archive's central directory.
+     */
+    private ZipEntry getEntry(ZipArchives.Handle handle) throws FileNotFoundException {
+	ZipEntry entry = handle.getEntry(path);
+	if (entry == null) {
+	    throw new FileNotFoundException(path);
 	}
-	throw new FileNotFoundException(name);
+	return entry;
     }
 
-    private static class SizeStream extends OutputStream {
-	int counter;
-
-	SizeStream() {
-	    counter = 0;
+    private static File toFile(URL url) {
+	try {
+	    return new File(url.toURI());
+	} catch (URISyntaxException e) {
+	    return new File(url.getPath());
+	} catch (IllegalArgumentException e) {
+	    return new File(url.getPath());
 	}
+    }
 
-	int size() {
-	    return counter;
+    /**
+     * Advance the stream to the named entry, recording the sizes of the entries that are passed in the index.
+     */
+    private static ZipEntry advanceTo(ZipInputStream zin, String name, ZipIndex index) throws IOException {
+	ZipEntry entry, previous = null;
+	while ((entry = zin.getNextEntry()) != null) {
+	    if (previous != null) {
+		index.record(previous); // sizes from a data descriptor are set once the entry has been read
+	    }
+	    if (entry.getName().equals(name)) {
+		return entry;
+	    }
+	    previous = entry;
 	}
-
-	public void write(int b) {
-	    counter++;
+	if (previous != null) {
+	    index.record(previous);
 	}
+	throw new FileNotFoundException(name);
     }
 }
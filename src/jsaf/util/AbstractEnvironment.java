@@ -5,14 +5,16 @@ package jsaf.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.PatternSyntaxException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import jsaf.Message;
 import jsaf.intf.system.IEnvironment;
 
 /**
@@ -23,15 +25,40 @@ import jsaf.intf.system.IEnvironment;
  */
 public abstract class AbstractEnvironment implements IEnvironment {
     protected boolean caseInsensitive;
+
+    /**
+     * The variables. A subclass may replace the map, in which case the environment adopts it (wrapping it in a map that
+     * tracks changes, which is assigned to this field) when it is next used. From then on, the adopted map must only be
+     * modified through this field.
+     */
     protected Map<String, String> map;
 
+    private Variables variables;
+    private volatile Index index;
+
     protected AbstractEnvironment() {
 	this(false);
     }
 
     protected AbstractEnvironment(boolean caseInsensitive) {
 	this.caseInsensitive = caseInsensitive;
-	map = new HashMap<String, String>();
+	map = variables = new Variables();
+    }
+
+    /**
+     * Get the key under which a variable is stored in the map. In a case-insensitive environment, this may differ in case
+     * from var.
+     *
+     * @return null if the variable is not set
+     *
+     * @since 1.7
+     */
+    protected String getKey(String var) {
+	if (caseInsensitive) {
+	    return getIndex().keys.get(fold(var));
+	} else {
+	    return map.containsKey(var) ? var : null;
+	}
     }
 
     // Implement Iterable<String>
@@ -42,44 +69,348 @@ public abstract class AbstractEnvironment implements IEnvironment {
 
     // Implement IEnvironment
 
+    /**
+     * Expand references of the form %NAME% to the values of the named variables. Variable values that themselves contain
+     * references are expanded too (their expansions are memoized until the environment is modified), except where a
+     * variable refers back to itself, directly or indirectly; such a reference is left as it is. References to undefined
+     * variables are also left as they are.
+     */
     public String expand(String data) {
 	if (data.indexOf('%') < 0) {
 	    return data;
 	}
-	String originalData = data;
-	for(Map.Entry<String, String> entry : map.entrySet()) {
-	    try {
-		String pattern = new StringBuffer(caseInsensitive ? "(?i)%" : "%").append(Regex.escapeRegex(entry.getKey())).append("%").toString();
-		data = data.replaceAll(pattern, Matcher.quoteReplacement(entry.getValue()));
-	    } catch (PatternSyntaxException e) {
-		Message.getLogger().warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
-	    }
-	}
-	if (data.equals(originalData)) {
-	    return data; // Some unexpandable pattern exists in there
-	} else {
-	    return expand(data); // Recurse, in case a variable includes another
-	}
+	return getIndex().expand(data);
     }
 
     public String getenv(String var) {
 	if (caseInsensitive) {
-	    for (String key : this) {
-		if (key.equalsIgnoreCase(var)) {
-		    return map.get(key);
-		}
-	    }
-	    return null;
+	    String key = getKey(var);
+	    return key == null ? null : map.get(key);
 	} else {
 	    return map.get(var);
 	}
     }
 
+    /**
+     * The result is a copy of a snapshot that is cached until a variable is modified.
+     */
     public String[] toArray() {
-	ArrayList<String> list = new ArrayList<String>();
-	for (String key : this) {
-	    list.add(new StringBuffer(key).append("=").append(getenv(key)).toString());
+	Index i = getIndex();
+	String[] array = i.array;
+	if (array == null) {
+	    ArrayList<String> list = new ArrayList<String>(map.size());
+	    for (Map.Entry<String, String> entry : map.entrySet()) {
+		list.add(new StringBuffer(entry.getKey()).append("=").append(entry.getValue()).toString());
+	    }
+	    i.array = array = list.toArray(new String[list.size()]);
+	}
+	return array.clone();
+    }
+
+    // Private
+
+    /**
+     * Get the index of the variables. If a subclass has replaced the map, it is adopted first.
+     */
+    private Index getIndex() {
+	if (map != variables) {
+	    map = variables = new Variables(map);
+	    index = null;
+	}
+	Index i = index;
+	if (i == null) {
+	    index = i = new Index();
+	}
+	return i;
+    }
+
+    /**
+     * Update (or discard) the index following a change to the variable with the specified key.
+     */
+    private void changed(String key) {
+	Index i = index;
+	index = i == null ? null : i.update(key);
+    }
+
+    /**
+     * Fold the case of a String (character-wise, in the manner of String.equalsIgnoreCase).
+     */
+    private static String fold(String s) {
+	StringBuilder sb = null;
+	int len = s.length();
+	for (int i=0; i < len; i++) {
+	    char ch = s.charAt(i);
+	    char folded = Character.toLowerCase(Character.toUpperCase(ch));
+	    if (sb == null && folded != ch) {
+		sb = new StringBuilder(len).append(s, 0, i);
+	    }
+	    if (sb != null) {
+		sb.append(folded);
+	    }
+	}
+	return sb == null ? s : sb.toString();
+    }
+
+    /**
+     * Derived state of the variables: the case-folded index of their keys (for a case-insensitive environment), the
+     * memoized expansions of their values and the cached result of toArray.
+     */
+    class Index {
+	private ConcurrentHashMap<String, String> keys, memo;
+	private volatile String[] array;
+
+	Index() {
+	    if (caseInsensitive) {
+		keys = new ConcurrentHashMap<String, String>();
+		for (String key : map.keySet()) {
+		    keys.putIfAbsent(fold(key), key);
+		}
+	    }
+	    memo = new ConcurrentHashMap<String, String>();
+	}
+
+	/**
+	 * Create the index following a change to a single variable of the previous index.
+	 */
+	Index(Index previous, String key) {
+	    keys = previous.keys;
+	    if (keys != null) {
+		String folded = fold(key);
+		if (map.containsKey(key)) {
+		    keys.putIfAbsent(folded, key);
+		} else {
+		    keys.remove(folded, key);
+		}
+	    }
+	    memo = new ConcurrentHashMap<String, String>();
+	}
+
+	/**
+	 * Get the index following a change to a single variable, or null if it must be rebuilt.
+	 */
+	Index update(String key) {
+	    Index next = new Index(this, key);
+	    if (next.keys != null && next.keys.size() != map.size()) {
+		//
+		// Several keys differ only in case, so the index must be rebuilt to find the one that remains
+		//
+		return null;
+	    }
+	    return next;
+	}
+
+	String expand(String data) {
+	    return expand(data, new Resolution());
+	}
+
+	// Private
+
+	private String expand(String data, Resolution resolution) {
+	    StringBuilder sb = null;
+	    int pos = 0;
+	    int begin = data.indexOf('%');
+	    while (begin >= 0) {
+		int end = data.indexOf('%', begin + 1);
+		if (end < 0) {
+		    break;
+		}
+		String name = data.substring(begin + 1, end);
+		String value = resolve(caseInsensitive ? fold(name) : name, resolution);
+		if (value == null) {
+		    //
+		    // Not a reference, but the closing % may begin one
+		    //
+		    begin = end;
+		} else {
+		    if (sb == null) {
+			sb = new StringBuilder(data.length() + value.length());
+		    }
+		    sb.append(data, pos, begin).append(value);
+		    pos = end + 1;
+		    begin = data.indexOf('%', pos);
+		}
+	    }
+	    if (sb == null) {
+		return data;
+	    } else {
+		return sb.append(data, pos, data.length()).toString();
+	    }
+	}
+
+	/**
+	 * Get the expanded value of a variable, or null if it is undefined or is already being expanded (i.e., the
+	 * reference is cyclic). Values whose expansion involved a cyclic reference are not memoized, as they depend on
+	 * where the expansion began.
+	 *
+	 * @param name the variable name (case-folded, in a case-insensitive environment)
+	 */
+	private String resolve(String name, Resolution resolution) {
+	    String value = memo.get(name);
+	    if (value != null) {
+		return value;
+	    }
+	    String raw = null;
+	    if (keys == null) {
+		raw = map.get(name);
+	    } else {
+		String key = keys.get(name);
+		if (key != null) {
+		    raw = map.get(key);
+		}
+	    }
+	    if (raw == null) {
+		return null;
+	    } else if (resolution.pending.contains(name)) {
+		resolution.cyclic = true;
+		return null;
+	    }
+	    boolean cyclic = resolution.cyclic;
+	    resolution.cyclic = false;
+	    resolution.pending.add(name);
+	    value = expand(raw, resolution);
+	    resolution.pending.remove(name);
+	    if (!resolution.cyclic) {
+		memo.put(name, value);
+	    }
+	    resolution.cyclic |= cyclic;
+	    return value;
+	}
+    }
+
+    /**
+     * The state of an expansion.
+     */
+    static class Resolution {
+	Set<String> pending = new HashSet<String>();
+	boolean cyclic = false;
+    }
+
+    /**
+     * The environment's own map of variables, which keeps the index up-to-date however it is modified.
+     */
+    class Variables extends AbstractMap<String, String> {
+	private Map<String, String> delegate;
+
+	Variables() {
+	    this(new HashMap<String, String>());
+	}
+
+	/**
+	 * Wrap a map that was assigned by a subclass.
+	 */
+	Variables(Map<String, String> delegate) {
+	    this.delegate = delegate;
+	}
+
+	@Override
+	public int size() {
+	    return delegate.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+	    return delegate.containsKey(key);
+	}
+
+	@Override
+	public String get(Object key) {
+	    return delegate.get(key);
+	}
+
+	@Override
+	public String put(String key, String value) {
+	    String old = delegate.put(key, value);
+	    changed(key);
+	    return old;
+	}
+
+	@Override
+	public String remove(Object key) {
+	    if (delegate.containsKey(key)) {
+		String old = delegate.remove(key);
+		changed((String)key);
+		return old;
+	    } else {
+		return null;
+	    }
+	}
+
+	@Override
+	public void clear() {
+	    delegate.clear();
+	    index = null;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+	    return new AbstractSet<Map.Entry<String, String>>() {
+		@Override
+		public int size() {
+		    return delegate.size();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, String>> iterator() {
+		    final Iterator<Map.Entry<String, String>> iter = delegate.entrySet().iterator();
+		    return new Iterator<Map.Entry<String, String>>() {
+			private Map.Entry<String, String> current;
+
+			public boolean hasNext() {
+			    return iter.hasNext();
+			}
+
+			public Map.Entry<String, String> next() {
+			    current = iter.next();
+			    return new Variable(current);
+			}
+
+			public void remove() {
+			    iter.remove();
+			    changed(current.getKey());
+			}
+		    };
+		}
+	    };
+	}
+    }
+
+    /**
+     * An entry of the Variables map.
+     */
+    class Variable implements Map.Entry<String, String> {
+	private Map.Entry<String, String> entry;
+
+	Variable(Map.Entry<String, String> entry) {
+	    this.entry = entry;
+	}
+
+	public String getKey() {
+	    return entry.getKey();
+	}
+
+	public String getValue() {
+	    return entry.getValue();
+	}
+
+	public String setValue(String value) {
+	    String old = entry.setValue(value);
+	    changed(entry.getKey());
+	    return old;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    return entry.equals(obj);
+	}
+
+	@Override
+	public int hashCode() {
+	    return entry.hashCode();
+	}
+
+	@Override
+	public String toString() {
+	    return entry.toString();
 	}
-	return list.toArray(new String[list.size()]);
     }
 }
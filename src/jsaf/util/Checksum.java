@@ -12,6 +12,8 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
 
+import jsaf.io.BufferPool;
+
 /**
  * Simple utility for computing checksums.
  *
@@ -112,10 +114,14 @@ public class Checksum {
      */
     public static byte[] createChecksum(InputStream in, Algorithm algorithm) throws IOException {
 	MessageDigest digest = getDigest(algorithm);
-        byte[] buff = new byte[512];
-        int len = 0;
-        while ((len = in.read(buff)) > 0) {
-       	    digest.update(buff, 0, len);
+        byte[] buff = BufferPool.borrow(4096);
+        try {
+            int len = 0;
+            while ((len = in.read(buff)) > 0) {
+       	        digest.update(buff, 0, len);
+            }
+        } finally {
+            BufferPool.release(buff);
         }
         return digest.digest();
     }
@@ -29,9 +29,15 @@ public class Environment extends AbstractEnvironment {
 	}
     }
 
+    /**
+     * Create an environment containing a copy of the specified map's entries.
+     *
+     * Before 1.7, the environment was a live view of the specified map. Since 1.7, the map is copied, so that the environment
+     * can keep its index of the variables up-to-date; subsequent changes to the map are not reflected in the environment.
+     */
     public Environment(Map<String, String> map, boolean caseInsensitive) {
 	super(caseInsensitive);
-	this.map = map;
+	this.map.putAll(map);
     }
 
     /**
@@ -50,13 +56,9 @@ public class Environment extends AbstractEnvironment {
      * Set a variable value. Use a value of null or an empty string to unset a value.
      */
     public void setenv(String variable, String value) {
-	if (caseInsensitive) {
-	    for (String key : this) {
-		if (key.equalsIgnoreCase(variable)) {
-		    variable = key;
-		    break;
-		}
-	    }
+	String key = getKey(variable);
+	if (key != null) {
+	    variable = key;
 	}
 	if (value == null || "".equals(value)) {
 	    map.remove(variable);
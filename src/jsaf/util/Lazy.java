@@ -0,0 +1,115 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.util;
+
+import jsaf.Message;
+
+/**
+ * A log message argument whose value is only computed if the message is actually formatted; i.e., if the logger's level
+ * is enabled. LocLogger checks the level before formatting messages identified by an Enum key, so, for example:
+ * <pre>
+ *   logger.trace(Message.STATUS_EXEC_OUTPUT, Lazy.preview(output));
+ * </pre>
+ * costs next to nothing when tracing is disabled. Messages given as Strings should instead be guarded by isXxxEnabled.
+ *
+ * The value is computed at most once.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public abstract class Lazy {
+    /**
+     * The default maximum number of characters in a preview.
+     */
+    public static final int PREVIEW_LENGTH = 1024;
+
+    /**
+     * Get a preview of data: at most PREVIEW_LENGTH characters of it, followed by the number of characters omitted.
+     */
+    public static Lazy preview(CharSequence data) {
+	return preview(data, PREVIEW_LENGTH);
+    }
+
+    /**
+     * Get a preview of data: at most max characters of it, followed by the number of characters omitted.
+     */
+    public static Lazy preview(CharSequence data, int max) {
+	return new Preview(data, max);
+    }
+
+    /**
+     * Get the stack trace of a Throwable (see Strings.toString(Throwable)).
+     */
+    public static Lazy stackTrace(final Throwable t) {
+	return new Lazy() {
+	    protected Object compute() {
+		return Strings.toString(t);
+	    }
+	};
+    }
+
+    /**
+     * Get the concatenation of the string values of some objects.
+     */
+    public static Lazy concat(final Object... parts) {
+	return new Lazy() {
+	    protected Object compute() {
+		StringBuilder sb = new StringBuilder();
+		for (Object part : parts) {
+		    sb.append(part);
+		}
+		return sb.toString();
+	    }
+	};
+    }
+
+    /**
+     * A preview, whose untruncated data is available to a LogCensor, so that a keyword spanning the cut is still redacted.
+     */
+    static class Preview extends Lazy {
+	private CharSequence data;
+	private int max;
+
+	Preview(CharSequence data, int max) {
+	    this.data = data;
+	    this.max = max;
+	}
+
+	CharSequence getData() {
+	    return data;
+	}
+
+	/**
+	 * Get a preview of other (e.g., redacted) data, of the same maximum length.
+	 */
+	Preview of(CharSequence data) {
+	    return new Preview(data, max);
+	}
+
+	protected Object compute() {
+	    if (data == null || data.length() <= max) {
+		return data;
+	    } else {
+		StringBuilder sb = new StringBuilder(max + 32).append(data, 0, max);
+		return sb.append(Message.getMessage(Message.STATUS_TRUNCATED, data.length() - max)).toString();
+	    }
+	}
+    }
+
+    private String value = null;
+
+    /**
+     * Compute the value of the argument.
+     */
+    protected abstract Object compute();
+
+    @Override
+    public final String toString() {
+	if (value == null) {
+	    value = String.valueOf(compute());
+	}
+	return value;
+    }
+}
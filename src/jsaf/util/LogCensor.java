@@ -3,12 +3,14 @@
 
 package jsaf.util;
 
-import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.slf4j.cal10n.LocLogger;
 import ch.qos.cal10n.MessageConveyor;
@@ -18,33 +20,41 @@ import jsaf.intf.util.ILoggable;
 /**
  * An ILoggable.Censor implementation class.
  *
+ * The keywords are compiled into an Aho-Corasick automaton (which is rebuilt whenever the keywords change), so that all the
+ * occurrences of all the keywords in a message are found in a single pass over it. Overlapping occurrences are redacted
+ * together.
+ *
  * @author David A. Solin
  * @version %I% %G%
  */
 public class LogCensor implements ILoggable.Censor {
     static final String SANITIZED = "************";
 
-    private Collection<CharSequence> secrets;
+    private List<char[]> secrets;
+    private volatile Automaton automaton;
     private Collection<FilterLogger> filters;
 
     public LogCensor() {
-	secrets = new HashSet<CharSequence>();
+	secrets = new ArrayList<char[]>();
+	automaton = null;
 	filters = new ArrayList<FilterLogger>();
     }
 
     // Implement ILoggable.Censor
 
-    public void addKeyword(char[] keyword) {
-	secrets.add((CharSequence)CharBuffer.allocate(keyword.length).put(keyword).rewind());
+    public synchronized void addKeyword(char[] keyword) {
+	if (keyword.length > 0) {
+	    secrets.add(Arrays.copyOf(keyword, keyword.length));
+	    automaton = new Automaton(secrets);
+	}
     }
 
-    public void clearKeywords() {
-	Iterator<CharSequence> iter = secrets.iterator();
-	while(iter.hasNext()) {
-	    CharSequence seq = iter.next();
-	    iter.remove();
-	    ((CharBuffer)seq).clear();
+    public synchronized void clearKeywords() {
+	for (char[] secret : secrets) {
+	    Arrays.fill(secret, '\0');
 	}
+	secrets.clear();
+	automaton = null;
     }
 
     public boolean censoring(ILoggable subject) {
@@ -81,21 +91,153 @@ public class LogCensor implements ILoggable.Censor {
     // Internal
 
     Object[] expurgate(Object... args) {
+	Automaton automaton = this.automaton;
+	if (automaton == null) {
+	    return args;
+	}
 	Object[] sanitized = new Object[args.length];
-	Iterator<CharSequence> iter = secrets.iterator();
-	while(iter.hasNext()) {
-	    CharSequence secret = iter.next();
-	    for (int i=0; i < args.length; i++) {
-		if (args[i] instanceof String) {
-		    sanitized[i] = ((String)args[i]).replace(secret, SANITIZED);
-		} else {
-		    sanitized[i] = args[i];
-		}
+	for (int i=0; i < args.length; i++) {
+	    if (args[i] instanceof Lazy.Preview) {
+		//
+		// Redact the whole data before it is truncated, so that no part of a keyword spanning the cut is logged
+		//
+		Lazy.Preview preview = (Lazy.Preview)args[i];
+		CharSequence data = preview.getData();
+		sanitized[i] = data == null ? preview : preview.of(automaton.redact(data.toString()));
+	    } else if (args[i] instanceof String || args[i] instanceof Lazy) {
+		sanitized[i] = automaton.redact(args[i].toString());
+	    } else {
+		sanitized[i] = args[i];
 	    }
 	}
 	return sanitized;
     }
 
+    /**
+     * An Aho-Corasick automaton, which finds all the occurrences of a set of keywords in a string in a single pass.
+     */
+    static class Automaton {
+	private char[][] labels;	// the sorted transition characters of each state
+	private int[][] targets;	// the corresponding target states
+	private int[] fail;		// the failure link of each state
+	private int[] match;		// the length of the longest keyword that ends at each state, or 0
+
+	Automaton(Collection<char[]> keywords) {
+	    //
+	    // Build the trie
+	    //
+	    List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+	    List<Integer> lengths = new ArrayList<Integer>();
+	    trie.add(new TreeMap<Character, Integer>());
+	    lengths.add(0);
+	    for (char[] keyword : keywords) {
+		int state = 0;
+		for (char ch : keyword) {
+		    Integer next = trie.get(state).get(ch);
+		    if (next == null) {
+			next = trie.size();
+			trie.get(state).put(ch, next);
+			trie.add(new TreeMap<Character, Integer>());
+			lengths.add(0);
+		    }
+		    state = next;
+		}
+		lengths.set(state, keyword.length);
+	    }
+	    int size = trie.size();
+	    labels = new char[size][];
+	    targets = new int[size][];
+	    fail = new int[size];
+	    match = new int[size];
+	    for (int state=0; state < size; state++) {
+		TreeMap<Character, Integer> edges = trie.get(state);
+		labels[state] = new char[edges.size()];
+		targets[state] = new int[edges.size()];
+		int i = 0;
+		for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+		    labels[state][i] = edge.getKey();
+		    targets[state][i++] = edge.getValue();
+		}
+		match[state] = lengths.get(state);
+	    }
+
+	    //
+	    // Compute the failure links breadth-first, so the link of a state's parent is always known
+	    //
+	    int[] queue = new int[size];
+	    int head = 0, tail = 0;
+	    for (int target : targets[0]) {
+		fail[target] = 0;
+		queue[tail++] = target;
+	    }
+	    while (head < tail) {
+		int state = queue[head++];
+		for (int i=0; i < labels[state].length; i++) {
+		    int target = targets[state][i];
+		    int f = next(fail[state], labels[state][i]);
+		    fail[target] = f;
+		    match[target] = Math.max(match[target], match[f]);
+		    queue[tail++] = target;
+		}
+	    }
+	}
+
+	/**
+	 * Replace all the occurrences of the keywords in the string with SANITIZED.
+	 */
+	String redact(String s) {
+	    int[] ranges = null; // pairs of (start, end) offsets of disjoint, ordered ranges to be redacted
+	    int count = 0;
+	    int state = 0;
+	    for (int i=0; i < s.length(); i++) {
+		state = next(state, s.charAt(i));
+		if (match[state] > 0) {
+		    int start = i + 1 - match[state];
+		    int end = i + 1;
+		    if (ranges == null) {
+			ranges = new int[8];
+		    }
+		    //
+		    // The new range ends after all the others, but may overlap some of them
+		    //
+		    while (count > 0 && start < ranges[count - 1]) {
+			count -= 2;
+			start = Math.min(start, ranges[count]);
+		    }
+		    if (count == ranges.length) {
+			ranges = Arrays.copyOf(ranges, count * 2);
+		    }
+		    ranges[count++] = start;
+		    ranges[count++] = end;
+		}
+	    }
+	    if (count == 0) {
+		return s;
+	    }
+	    StringBuilder sb = new StringBuilder(s.length());
+	    int pos = 0;
+	    for (int i=0; i < count; i += 2) {
+		sb.append(s, pos, ranges[i]).append(SANITIZED);
+		pos = ranges[i + 1];
+	    }
+	    return sb.append(s, pos, s.length()).toString();
+	}
+
+	// Private
+
+	private int next(int state, char ch) {
+	    while (true) {
+		int i = Arrays.binarySearch(labels[state], ch);
+		if (i >= 0) {
+		    return targets[state][i];
+		} else if (state == 0) {
+		    return 0;
+		}
+		state = fail[state];
+	    }
+	}
+    }
+
     /**
      * LogCensor's internal implementation of LocLogger, which has been exposed so that classes can use its filterString method
      * when creating exceptions whose messages may contain sensitive keywords.
@@ -114,62 +256,132 @@ public class LogCensor implements ILoggable.Censor {
 
         @Override
         public void debug(String msg, Throwable t) {
-	    StringBuffer sb = new StringBuffer(msg).append(Strings.LF).append(Strings.toString(t));
-	    logger.debug(filterString(sb.toString()));
+	    if (logger.isDebugEnabled()) {
+		logger.debug(filterString(msg + Strings.LF + Strings.toString(t)));
+	    }
+        }
+
+        @Override
+        public void debug(String msg) {
+	    if (logger.isDebugEnabled()) {
+		logger.debug(filterString(msg));
+	    }
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+	    return logger.isDebugEnabled();
         }
 
         @Override
         public void debug(Enum<?> key, Object... args) {
-	    logger.debug(key, censor.expurgate(args));
+	    if (logger.isDebugEnabled()) {
+		logger.debug(key, censor.expurgate(args));
+	    }
         }
 
         @Override
         public void error(String msg, Throwable t) {
-	    StringBuffer sb = new StringBuffer(msg).append(Strings.LF).append(censor.expurgate(Strings.toString(t)));
-	    logger.error(filterString(sb.toString()));
+	    if (logger.isErrorEnabled()) {
+		logger.error(filterString(msg + Strings.LF + Strings.toString(t)));
+	    }
+        }
+
+        @Override
+        public void error(String msg) {
+	    if (logger.isErrorEnabled()) {
+		logger.error(filterString(msg));
+	    }
+        }
+
+        @Override
+        public boolean isErrorEnabled() {
+	    return logger.isErrorEnabled();
         }
 
         @Override
         public void error(Enum<?> key, Object... args) {
-	    logger.error(key, censor.expurgate(args));
+	    if (logger.isErrorEnabled()) {
+		logger.error(key, censor.expurgate(args));
+	    }
         }
 
         @Override
         public void info(String msg, Throwable t) {
-	    StringBuffer sb = new StringBuffer(msg).append(Strings.LF).append(censor.expurgate(Strings.toString(t)));
-	    logger.info(filterString(sb.toString()));
+	    if (logger.isInfoEnabled()) {
+		logger.info(filterString(msg + Strings.LF + Strings.toString(t)));
+	    }
         }
 
         @Override
         public void info(String msg) {
-	    logger.info(msg);
+	    if (logger.isInfoEnabled()) {
+		logger.info(filterString(msg));
+	    }
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+	    return logger.isInfoEnabled();
         }
 
         @Override
         public void info(Enum<?> key, Object... args) {
-	    logger.info(key, censor.expurgate(args));
+	    if (logger.isInfoEnabled()) {
+		logger.info(key, censor.expurgate(args));
+	    }
         }
 
         @Override
         public void trace(String msg, Throwable t) {
-	    StringBuffer sb = new StringBuffer(msg).append(Strings.LF).append(censor.expurgate(Strings.toString(t)));
-	    logger.trace(filterString(sb.toString()));
+	    if (logger.isTraceEnabled()) {
+		logger.trace(filterString(msg + Strings.LF + Strings.toString(t)));
+	    }
+        }
+
+        @Override
+        public void trace(String msg) {
+	    if (logger.isTraceEnabled()) {
+		logger.trace(filterString(msg));
+	    }
+        }
+
+        @Override
+        public boolean isTraceEnabled() {
+	    return logger.isTraceEnabled();
         }
 
         @Override
         public void trace(Enum<?> key, Object... args) {
-	    logger.trace(key, censor.expurgate(args));
+	    if (logger.isTraceEnabled()) {
+		logger.trace(key, censor.expurgate(args));
+	    }
         }
 
         @Override
         public void warn(String msg, Throwable t) {
-	    StringBuffer sb = new StringBuffer(msg).append(Strings.LF).append(censor.expurgate(Strings.toString(t)));
-	    logger.warn(filterString(sb.toString()));
+	    if (logger.isWarnEnabled()) {
+		logger.warn(filterString(msg + Strings.LF + Strings.toString(t)));
+	    }
+        }
+
+        @Override
+        public void warn(String msg) {
+	    if (logger.isWarnEnabled()) {
+		logger.warn(filterString(msg));
+	    }
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+	    return logger.isWarnEnabled();
         }
 
         @Override
         public void warn(Enum<?> key, Object... args) {
-	    logger.warn(key, censor.expurgate(args));
+	    if (logger.isWarnEnabled()) {
+		logger.warn(key, censor.expurgate(args));
+	    }
         }
 
 	// Internal
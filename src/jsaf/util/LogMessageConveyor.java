@@ -3,10 +3,13 @@
 
 package jsaf.util;
 
+import java.text.MessageFormat;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import ch.qos.cal10n.IMessageConveyor;
 import ch.qos.cal10n.MessageConveyor;
@@ -16,46 +19,149 @@ import ch.qos.cal10n.MessageParameterObj;
 /**
  * An IMessageConveyor that consolidates multiple IMessageConveyors.
  *
+ * For enums handled by a cal10n MessageConveyor, the message pattern of each key is resolved from its resource bundle only
+ * once, and parsed into a MessageFormat only once. (Consequently, changes to a bundle file are not picked up once its
+ * messages have been used.) Other conveyors are consulted for every message.
+ *
+ * The registry of conveyors is copied on write, so messages are retrieved without locking.
+ *
  * @author David A. Solin
  * @version %I% %G%
  */
 public class LogMessageConveyor implements IMessageConveyor {
-    private HashMap<Class<? extends Enum<?>>, IMessageConveyor> conveyors;
+    private AtomicReference<Map<Class<? extends Enum<?>>, Registration>> registry;
 
     /**
      * Create a new conveyor.
      */
     public LogMessageConveyor() {
-	conveyors = new HashMap<Class<? extends Enum<?>>, IMessageConveyor>();
+	Map<Class<? extends Enum<?>>, Registration> empty = Collections.emptyMap();
+	registry = new AtomicReference<Map<Class<? extends Enum<?>>, Registration>>(empty);
     }
 
     /**
      * Add a conveyor to handle messages for the specified enum.
      */
-    public synchronized void add(Class<? extends Enum<?>> clazz, IMessageConveyor conveyor) {
-	conveyors.put(clazz, conveyor);
+    public void add(Class<? extends Enum<?>> clazz, IMessageConveyor conveyor) {
+	Registration registration = new Registration(clazz, conveyor);
+	Map<Class<? extends Enum<?>>, Registration> current, next;
+	do {
+	    current = registry.get();
+	    next = new HashMap<Class<? extends Enum<?>>, Registration>(current);
+	    next.put(clazz, registration);
+	} while (!registry.compareAndSet(current, next));
     }
 
     /**
      * Return an unmodifiable Map of enum-to-conveyor mappings handled by this instance.
      */
-    public synchronized Map<Class<? extends Enum<?>>, IMessageConveyor> getConveyors() {
-	return Collections.unmodifiableMap(new HashMap<Class<? extends Enum<?>>, IMessageConveyor>(conveyors));
+    public Map<Class<? extends Enum<?>>, IMessageConveyor> getConveyors() {
+	Map<Class<? extends Enum<?>>, IMessageConveyor> conveyors = new HashMap<Class<? extends Enum<?>>, IMessageConveyor>();
+	for (Map.Entry<Class<? extends Enum<?>>, Registration> entry : registry.get().entrySet()) {
+	    conveyors.put(entry.getKey(), entry.getValue().conveyor);
+	}
+	return Collections.unmodifiableMap(conveyors);
+    }
+
+    /**
+     * Resolve and parse the messages for every key of every registered enum, so that the cost is not paid when the
+     * messages are first logged.
+     *
+     * @throws MessageConveyorException if the resource bundle for a registered enum cannot be found
+     *
+     * @since 1.7
+     */
+    public void warm() throws MessageConveyorException {
+	for (Registration registration : registry.get().values()) {
+	    registration.warm();
+	}
     }
 
     // Implement IMessageConveyor
 
     public <E extends Enum<?>>String getMessage(E key, Object... args) throws MessageConveyorException {
-	IMessageConveyor mc = conveyors.get(key.getDeclaringClass());
-	if (mc == null) {
+	Registration registration = registry.get().get(key.getDeclaringClass());
+	if (registration == null) {
 	    String name = key.getClass().getName();
 	    throw new MessageConveyorException(name, new NoSuchElementException(name));
 	} else {
-	    return mc.getMessage(key, args);
+	    return registration.getMessage(key, args);
 	}
     }
 
     public String getMessage(MessageParameterObj mpo) throws MessageConveyorException {
 	return getMessage(mpo.getKey(), mpo.getArgs());
     }
+
+    // Private
+
+    /**
+     * A conveyor registered for an enum, with its cache of resolved messages (indexed by ordinal).
+     */
+    static class Registration {
+	private IMessageConveyor conveyor;
+	private Enum<?>[] keys;
+	private String[] patterns;
+	private AtomicReferenceArray<MessageFormat> formats;
+
+	Registration(Class<? extends Enum<?>> clazz, IMessageConveyor conveyor) {
+	    this.conveyor = conveyor;
+	    //
+	    // Only cal10n's MessageConveyor is known to return the unformatted pattern when there are no arguments, and
+	    // otherwise to format the pattern using MessageFormat.
+	    //
+	    if (conveyor instanceof MessageConveyor) {
+		keys = clazz.getEnumConstants();
+		patterns = new String[keys.length];
+		formats = new AtomicReferenceArray<MessageFormat>(keys.length);
+	    }
+	}
+
+	String getMessage(Enum<?> key, Object... args) throws MessageConveyorException {
+	    if (patterns == null) {
+		return conveyor.getMessage(key, args);
+	    }
+	    int ordinal = key.ordinal();
+	    String pattern = getPattern(ordinal);
+	    if (args == null || args.length == 0) {
+		return pattern;
+	    }
+	    MessageFormat format = formats.get(ordinal);
+	    if (format == null && !formats.compareAndSet(ordinal, null, format = new MessageFormat(pattern))) {
+		format = formats.get(ordinal);
+	    }
+	    //
+	    // MessageFormat instances are not thread-safe.
+	    //
+	    synchronized(format) {
+		return format.format(args);
+	    }
+	}
+
+	void warm() throws MessageConveyorException {
+	    if (patterns != null) {
+		for (int i=0; i < keys.length; i++) {
+		    String pattern = getPattern(i);
+		    try {
+			formats.compareAndSet(i, null, new MessageFormat(pattern));
+		    } catch (IllegalArgumentException e) {
+			// A malformed pattern is reported if and when the message is formatted
+		    }
+		}
+	    }
+	}
+
+	// Private
+
+	/**
+	 * Strings are immutable, so a pattern can safely be read by a thread other than the one that resolved it.
+	 */
+	private String getPattern(int ordinal) throws MessageConveyorException {
+	    String pattern = patterns[ordinal];
+	    if (pattern == null) {
+		patterns[ordinal] = pattern = conveyor.getMessage(keys[ordinal]);
+	    }
+	    return pattern;
+	}
+    }
 }
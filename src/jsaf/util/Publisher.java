@@ -4,10 +4,13 @@
 package jsaf.util;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.cal10n.LocLogger;
 
@@ -18,15 +21,56 @@ import jsaf.intf.util.ISubscriber;
 /**
  * An implementation of IPublisher.
  *
+ * Events are queued by publish, and dispatched in batches by the publisher thread. The subscribers are held in a
+ * copy-on-write list, so dispatching does not lock them. By default, subscribers are notified on the publisher thread, in
+ * the order in which the events were published. A subscriber can instead be given its own lane (see subscribe(ISubscriber,
+ * int, Overflow)): a bounded queue, which is drained by a task on the TaskExecutor, so that a slow subscriber does not delay
+ * the notification of the others.
+ *
  * @author David A. Solin
  * @version %I% %G%
  */
 public class Publisher<T extends Enum> implements IPublisher<T>, Runnable {
-    private Collection<ISubscriber<T>> subscribers;
+    /**
+     * Policies for a lane whose queue is full.
+     *
+     * @since 1.7
+     */
+    public enum Overflow {
+	/**
+	 * Wait for the subscriber to make room. No events are lost, but the publisher thread is stalled while it waits.
+	 */
+	BLOCK,
+
+	/**
+	 * Discard the new event.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Discard the oldest queued event.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Replace a queued event of the same type with the new event (so that, e.g., the subscriber only receives the latest
+	 * of a series of progress updates), or else discard the oldest queued event.
+	 */
+	COALESCE;
+    }
+
+    /**
+     * The maximum number of events dispatched in a batch.
+     */
+    static final int MAX_BATCH = 256;
+
+    private CopyOnWriteArrayList<Subscription> subscriptions;
     private LinkedBlockingQueue<QueueEntry> queue;
+    private AtomicInteger pending;
+    private AtomicLong published, dropped, coalesced, notified, notifyNanos, maxNotifyNanos, maxLatencyNanos, maxDepth;
     private Thread thread;
     private String publisherThreadName;
-    private boolean stopping = false;
+    private volatile boolean stopping = false;
 
     private static final String DEFAULT_NAME = "Event Publisher Thread";
 
@@ -38,19 +82,159 @@ public class Publisher<T extends Enum> implements IPublisher<T>, Runnable {
 
     public Publisher(String publisherThreadName) {
 	this.publisherThreadName = publisherThreadName;
-	subscribers = new HashSet<ISubscriber<T>>();
+	subscriptions = new CopyOnWriteArrayList<Subscription>();
 	queue = new LinkedBlockingQueue<QueueEntry>();
+	pending = new AtomicInteger(0);
+	published = new AtomicLong(0);
+	dropped = new AtomicLong(0);
+	coalesced = new AtomicLong(0);
+	notified = new AtomicLong(0);
+	notifyNanos = new AtomicLong(0);
+	maxNotifyNanos = new AtomicLong(0);
+	maxLatencyNanos = new AtomicLong(0);
+	maxDepth = new AtomicLong(0);
 	logger = Message.getLogger();
 	thread = new Thread(this, publisherThreadName);
 	thread.setDaemon(true);
 	thread.start();
     }
 
+    /**
+     * Add a subscriber with its own lane: a queue holding up to capacity events, which is drained by a task on the
+     * TaskExecutor. If the subscriber is already subscribed, its lane is replaced.
+     *
+     * @param overflow the policy to apply when an event is published while the lane is full
+     *
+     * @since 1.7
+     */
+    public void subscribe(ISubscriber<T> subscriber, int capacity, Overflow overflow) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException(Integer.toString(capacity));
+	}
+	synchronized(subscriptions) {
+	    remove(subscriber);
+	    subscriptions.add(new Subscription(subscriber, new Lane(subscriber, capacity, overflow)));
+	}
+    }
+
+    /**
+     * Returns true if there are any subscribers. Publishers of frequent events can use this to avoid creating events that
+     * nobody will receive.
+     *
+     * @since 1.7
+     */
+    public boolean hasSubscribers() {
+	return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Get the number of events that have been published, but not yet dispatched by the publisher thread.
+     *
+     * @since 1.7
+     */
+    public int getQueueDepth() {
+	return queue.size();
+    }
+
+    /**
+     * Get the number of events queued in a subscriber's lane.
+     *
+     * @return 0 if the subscriber does not have a lane
+     *
+     * @since 1.7
+     */
+    public int getQueueDepth(ISubscriber<T> subscriber) {
+	for (Subscription subscription : subscriptions) {
+	    if (subscription.subscriber.equals(subscriber)) {
+		return subscription.lane == null ? 0 : subscription.lane.size();
+	    }
+	}
+	return 0;
+    }
+
+    /**
+     * Get the largest number of events that have been waiting to be dispatched by the publisher thread.
+     *
+     * @since 1.7
+     */
+    public long getMaxQueueDepth() {
+	return maxDepth.get();
+    }
+
+    /**
+     * Get the number of events that have been published.
+     *
+     * @since 1.7
+     */
+    public long getPublishedCount() {
+	return published.get();
+    }
+
+    /**
+     * Get the number of events that were discarded by lanes (not including those replaced by coalescing).
+     *
+     * @since 1.7
+     */
+    public long getDroppedCount() {
+	return dropped.get();
+    }
+
+    /**
+     * Get the number of events that were replaced by newer events in lanes with the COALESCE policy.
+     *
+     * @since 1.7
+     */
+    public long getCoalescedCount() {
+	return coalesced.get();
+    }
+
+    /**
+     * Get the number of notify calls that have been made to subscribers.
+     *
+     * @since 1.7
+     */
+    public long getNotifyCount() {
+	return notified.get();
+    }
+
+    /**
+     * Get the total time spent in subscribers' notify methods, in nanoseconds.
+     *
+     * @since 1.7
+     */
+    public long getNotifyNanos() {
+	return notifyNanos.get();
+    }
+
+    /**
+     * Get the longest time spent in a single notify call, in nanoseconds.
+     *
+     * @since 1.7
+     */
+    public long getMaxNotifyNanos() {
+	return maxNotifyNanos.get();
+    }
+
+    /**
+     * Get the longest time between the publication of an event and the return of a subscriber's notify call for the event,
+     * in nanoseconds.
+     *
+     * @since 1.7
+     */
+    public long getMaxLatencyNanos() {
+	return maxLatencyNanos.get();
+    }
+
     // Implement IPublisher<T>
 
     public void subscribe(ISubscriber<T> subscriber) {
-	synchronized(subscribers) {
-	    subscribers.add(subscriber);
+	synchronized(subscriptions) {
+	    for (Subscription subscription : subscriptions) {
+		if (subscription.subscriber.equals(subscriber)) {
+		    return;
+		}
+	    }
+	    subscriptions.add(new Subscription(subscriber, null));
 	}
     }
 
@@ -62,31 +246,47 @@ public class Publisher<T extends Enum> implements IPublisher<T>, Runnable {
 	try {
 	    if (maxWait > 0) {
 		long finishBy = System.currentTimeMillis() + maxWait;
-		for (int i=0; System.currentTimeMillis() < finishBy && queue.size() > 0; i++) {
+		while (System.currentTimeMillis() < finishBy && (pending.get() > 0 || getQueueDepth(subscriber) > 0)) {
 		    Thread.sleep(10);
 		}
 	    }
 	} catch (InterruptedException e) {
 	} finally {
-	    synchronized(subscribers) {
-		subscribers.remove(subscriber);
+	    synchronized(subscriptions) {
+		remove(subscriber);
 	    }
 	}
     }
 
     public void publish(T msg, Object arg) {
 	try {
+	    pending.incrementAndGet();
+	    published.incrementAndGet();
 	    queue.put(new QueueEntry(msg, arg));
+	    max(maxDepth, queue.size());
 	} catch (InterruptedException e) {
+	    pending.decrementAndGet();
 	}
     }
 
     // Implement Runnable
 
     public void run() {
+	List<QueueEntry> batch = new ArrayList<QueueEntry>(MAX_BATCH);
 	try {
 	    while(true) {
-		queue.take().publish();
+		batch.add(queue.take());
+		queue.drainTo(batch, MAX_BATCH - 1);
+		try {
+		    for (QueueEntry entry : batch) {
+			for (Subscription subscription : subscriptions) {
+			    subscription.deliver(entry);
+			}
+		    }
+		} finally {
+		    pending.addAndGet(-batch.size());
+		    batch.clear();
+		}
 	    }
 	} catch (InterruptedException e) {
 	    if (!stopping) {
@@ -99,9 +299,8 @@ public class Publisher<T extends Enum> implements IPublisher<T>, Runnable {
 
     public void dispose() {
 	if (thread != null) {
-	    Iterator<ISubscriber<T>> iter = subscribers.iterator();
-	    while(iter.hasNext()) {
-		unsubscribe(iter.next());
+	    for (Subscription subscription : subscriptions) {
+		unsubscribe(subscription.subscriber);
 	    }
 	    logger.debug(Message.STATUS_PUBLISHER_STOP, publisherThreadName);
 	    stopping = true;
@@ -125,19 +324,171 @@ public class Publisher<T extends Enum> implements IPublisher<T>, Runnable {
     class QueueEntry {
 	private T msg;
 	private Object arg;
+	private long published;
 
 	QueueEntry(T msg, Object arg) {
 	    this.msg = msg;
 	    this.arg = arg;
+	    published = System.nanoTime();
 	}
 
-	void publish() {
-	    Collection<ISubscriber<T>> subscribers;
-	    synchronized(Publisher.this.subscribers) {
-		subscribers = new ArrayList<ISubscriber<T>>(Publisher.this.subscribers);
-	    }
-	    for (ISubscriber<T> subscriber : subscribers) {
+	/**
+	 * Notify a subscriber of the event, recording the notify time and latency.
+	 */
+	void publish(ISubscriber<T> subscriber) {
+	    long start = System.nanoTime();
+	    try {
 		subscriber.notify(Publisher.this, msg, arg);
+	    } catch (RuntimeException e) {
+		logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+	    } finally {
+		long end = System.nanoTime();
+		notified.incrementAndGet();
+		notifyNanos.addAndGet(end - start);
+		max(maxNotifyNanos, end - start);
+		max(maxLatencyNanos, end - published);
+	    }
+	}
+    }
+
+    /**
+     * A subscriber, with or without a lane.
+     */
+    class Subscription {
+	final ISubscriber<T> subscriber;
+	final Lane lane;
+
+	Subscription(ISubscriber<T> subscriber, Lane lane) {
+	    this.subscriber = subscriber;
+	    this.lane = lane;
+	}
+
+	void deliver(QueueEntry entry) {
+	    if (lane == null) {
+		entry.publish(subscriber);
+	    } else {
+		lane.offer(entry);
+	    }
+	}
+    }
+
+    /**
+     * A bounded queue of events for a single subscriber, drained by a task on the TaskExecutor.
+     */
+    class Lane implements Runnable {
+	private ISubscriber<T> subscriber;
+	private int capacity;
+	private Overflow overflow;
+	private LinkedList<QueueEntry> entries;
+	private boolean scheduled, closed;
+
+	Lane(ISubscriber<T> subscriber, int capacity, Overflow overflow) {
+	    this.subscriber = subscriber;
+	    this.capacity = capacity;
+	    this.overflow = overflow;
+	    entries = new LinkedList<QueueEntry>();
+	    scheduled = false;
+	    closed = false;
+	}
+
+	synchronized int size() {
+	    return entries.size();
+	}
+
+	void offer(QueueEntry entry) {
+	    synchronized(this) {
+		if (closed) {
+		    return;
+		}
+		if (overflow == Overflow.COALESCE) {
+		    ListIterator<QueueEntry> iter = entries.listIterator();
+		    while (iter.hasNext()) {
+			if (iter.next().msg == entry.msg) {
+			    iter.set(entry);
+			    coalesced.incrementAndGet();
+			    return;
+			}
+		    }
+		}
+		if (entries.size() >= capacity) {
+		    switch(overflow) {
+		      case BLOCK:
+			try {
+			    while (entries.size() >= capacity && !closed) {
+				wait();
+			    }
+			} catch (InterruptedException e) {
+			    Thread.currentThread().interrupt();
+			    dropped.incrementAndGet();
+			    return;
+			}
+			break;
+		      case DROP_NEWEST:
+			dropped.incrementAndGet();
+			return;
+		      default: // DROP_OLDEST, COALESCE
+			entries.removeFirst();
+			dropped.incrementAndGet();
+			break;
+		    }
+		}
+		entries.add(entry);
+		if (scheduled) {
+		    return;
+		}
+		scheduled = true;
+	    }
+	    TaskExecutor.getInstance().submit(this);
+	}
+
+	void close() {
+	    synchronized(this) {
+		closed = true;
+		entries.clear();
+		notifyAll();
+	    }
+	}
+
+	public void run() {
+	    while (true) {
+		List<QueueEntry> batch = null;
+		synchronized(this) {
+		    if (entries.isEmpty() || closed) {
+			scheduled = false;
+			return;
+		    }
+		    batch = new ArrayList<QueueEntry>(entries);
+		    entries.clear();
+		    notifyAll();
+		}
+		for (QueueEntry entry : batch) {
+		    entry.publish(subscriber);
+		}
+	    }
+	}
+    }
+
+    // Private
+
+    /**
+     * Remove a subscriber, closing its lane (if any). The caller must hold the subscriptions lock.
+     */
+    private void remove(ISubscriber<T> subscriber) {
+	for (Subscription subscription : subscriptions) {
+	    if (subscription.subscriber.equals(subscriber)) {
+		subscriptions.remove(subscription);
+		if (subscription.lane != null) {
+		    subscription.lane.close();
+		}
+	    }
+	}
+    }
+
+    private static void max(AtomicLong max, long value) {
+	long current;
+	while (value > (current = max.get())) {
+	    if (max.compareAndSet(current, value)) {
+		break;
 	    }
 	}
     }
@@ -4,6 +4,7 @@
 package jsaf.util;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.EOFException;
@@ -13,12 +14,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.cal10n.LocLogger;
 
@@ -31,10 +39,16 @@ import jsaf.intf.system.IProcess;
 import jsaf.intf.system.IComputerSystem;
 import jsaf.intf.system.ISession.Timeout;
 import jsaf.intf.util.IProperty;
+import jsaf.intf.util.IScheduledTask;
+import jsaf.io.BufferPool;
+import jsaf.io.ChunkedBuffer;
 import jsaf.io.LineIterator;
 import jsaf.io.PerishableReader;
+import jsaf.io.ResumableTransfer;
 import jsaf.io.SimpleReader;
+import jsaf.io.SpillBuffer;
 import jsaf.io.Streams;
+import jsaf.io.TempFiles;
 import jsaf.io.TruncatedInputStream;
 import jsaf.io.XMLFilterStream;
 import jsaf.provider.SessionException;
@@ -78,6 +92,14 @@ public class SafeCLI {
      */
     public static final String GZIP_PROP = "SafeCLI.gzip";
 
+    /**
+     * ISession property key for specifying the maximum number of bytes by which the transfer of redirected output to the
+     * local machine may get ahead of the consumer of the manyLines iterator. If unset or 0, there is no limit.
+     *
+     * @since 1.7
+     */
+    public static final String READAHEAD_PROP = "SafeCLI.readAhead";
+
     /**
      * An interface for processing data from a process stream (stdout or stderr), used by the exec method.
      *
@@ -174,7 +196,7 @@ public class SafeCLI {
      * @since 1.5.0
      */
     public static final String exec(String cmd, long timeout, LocLogger logger) throws IOException {
-	logger.debug("Exec: " + cmd);
+	logger.debug(Message.STATUS_EXEC, cmd);
 	List<String> argv = null; 
 	if (System.getProperty("os.name").toLowerCase().indexOf("windows") == -1) { 
 	    argv = Arrays.<String>asList(new String[] {"/bin/sh", "-c", cmd});
@@ -188,13 +210,17 @@ public class SafeCLI {
 	    Process p = pb.start();
 	    in = PerishableReader.newInstance(p.getInputStream(), timeout);
 	    ByteArrayOutputStream out = new ByteArrayOutputStream();
-	    byte[] buff = new byte[1024];
-	    int len = 0;
-	    while ((len = in.read(buff)) > 0) {
-		out.write(buff, 0, len);
+	    byte[] buff = BufferPool.borrow(4096);
+	    try {
+		int len = 0;
+		while ((len = in.read(buff)) > 0) {
+		    out.write(buff, 0, len);
+		}
+	    } finally {
+		BufferPool.release(buff);
 	    }
 	    String output = new String(out.toByteArray(), Strings.UTF8);
-	    logger.trace("Output: " + output);
+	    logger.trace(Message.STATUS_EXEC_OUTPUT, Lazy.preview(output));
 	    return output;
 	} finally {
 	    if (in != null) {
@@ -409,6 +435,60 @@ public class SafeCLI {
      * @since 1.3
      */
     public static final Iterator<String> manyLines(String cmd, String[] env, IReaderHandler errHandler, IComputerSystem sys, long timeout) throws IOException {
+	return manyLines(cmd, env, errHandler, sys, timeout, false);
+    }
+
+    /**
+     * Run a command with a large volume of output, like manyLines, but wait until the output has been completely cached in a
+     * local file, and return a LineIterator that memory-maps the file. The iterator can be split (see LineIterator.trySplit),
+     * so that the lines can be parsed in parallel (see LineIterator.parse).
+     *
+     * If the cached output cannot be mapped (e.g., because it is compressed), or if the command's output is read live, the
+     * lines are first re-written as UTF-8 to a file in the system's workspace.
+     *
+     * When the end of the iterator is reached, the local file is deleted.
+     *
+     * @since 1.7
+     */
+    public static final LineIterator manyLinesMapped(String cmd, String[] env, IComputerSystem sys) throws IOException {
+	return manyLinesMapped(cmd, env, new ErrorLogger(sys), sys, sys.getTimeout(Timeout.XL));
+    }
+
+    /**
+     * Pass in a custom error stream handler to the manyLinesMapped command, with a custom timeout.
+     *
+     * @param timeout Specifies the maximum time that the command should take to finish executing.
+     *
+     * @since 1.7
+     */
+    public static final LineIterator manyLinesMapped(String cmd, String[] env, IReaderHandler errHandler, IComputerSystem sys, long timeout)
+		throws IOException {
+
+	Iterator<String> iter = manyLines(cmd, env, errHandler, sys, timeout, true);
+	if (iter instanceof LineIterator && ((LineIterator)iter).isMapped()) {
+	    return (LineIterator)iter;
+	}
+	File cache = TempFiles.create("cmd", null, sys.getWorkspace(), null);
+	Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(cache), Strings.UTF8));
+	try {
+	    while (iter.hasNext()) {
+		out.write(iter.next());
+		out.write('\n');
+	    }
+	} finally {
+	    out.close();
+	}
+	return LineIterator.map(cache, Strings.UTF8);
+    }
+
+    /**
+     * The implementation of manyLines.
+     *
+     * @param complete if true, a remote output file is completely copied to the local cache before this method returns
+     */
+    private static Iterator<String> manyLines(String cmd, String[] env, IReaderHandler errHandler, IComputerSystem sys, long timeout,
+		boolean complete) throws IOException {
+
 	IProperty props = sys.getProperties();
 	for (int attempt=1; true; attempt++) {
 	    if (!sys.isConnected()) {
@@ -419,7 +499,7 @@ public class SafeCLI {
 		// Modify the command to redirect output to a temp file (compressed), and periodically check the size of the file
 		//
 		FileMonitor mon = new FileMonitor(sys.getFilesystem());
-		JSAFSystem.schedule(mon, 15000, 15000);
+		IScheduledTask monTask = JSAFSystem.scheduleTask(mon, 15000, 15000);
 		int retries = sys.getProperties().getIntProperty(IComputerSystem.PROP_EXEC_RETRIES);
 		try {
 		    IFile remoteTemp = sys.getFilesystem().createTempFile("cmd", ".out", null);
@@ -449,16 +529,30 @@ public class SafeCLI {
 			    //
 			    // output was redirected to a local file that we can use directly as the cache
 			    //
-			    return new LineIterator(new File(tempPath));
+			    return LineIterator.map(new File(tempPath), null);
 			} else {
 			    //
-			    // output is potentially in a remote file, so we must copy its contents to a local cache
+			    // output is potentially in a remote file, so we must copy its contents to a local cache. The copy is
+			    // made in the background (resuming after any errors), and lines can be read while it is in progress.
 			    //
-			    File localTemp = File.createTempFile("cmd", null, sys.getWorkspace());
-			    localTemp.deleteOnExit();
-			    Streams.copy(remoteTemp.getInputStream(), new FileOutputStream(localTemp), true);
-			    remoteTemp.delete();
-			    return new LineIterator(localTemp);
+			    File localTemp = TempFiles.create("cmd", null, sys.getWorkspace(), null);
+			    ResumableTransfer transfer = new ResumableTransfer(remoteTemp, localTemp, retries, timeout, sys.getLogger());
+			    transfer.setDeleteSource(true);
+			    if (complete) {
+				transfer.start();
+				try {
+				    transfer.await();
+				} catch (IOException e) {
+				    TempFiles.delete(localTemp);
+				    throw e;
+				}
+				return LineIterator.map(localTemp, null);
+			    }
+			    if (props.containsKey(READAHEAD_PROP)) {
+				transfer.setReadAhead(props.getLongProperty(READAHEAD_PROP));
+			    }
+			    transfer.start();
+			    return new LineIterator(transfer.getInputStream(), null, localTemp);
 			}
 		    }
 		} catch (IOException e) {
@@ -468,7 +562,7 @@ public class SafeCLI {
 			sys.getLogger().warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
 		    }
 		} finally {
-		    JSAFSystem.cancelTask(mon);
+		    monTask.cancel();
 		}
 	    } else {
 		//
@@ -476,8 +570,13 @@ public class SafeCLI {
 		//
 		IProcess p = sys.createProcess(cmd, env, null);
 		p.start();
-		new HandlerThread(errHandler, "stderr reader", sys.getLogger()).start(new SimpleReader(p.getErrorStream()));
-		return new OutputLineIterator(p, timeout);
+		HandlerThread errThread = null;
+		InputStream err = p.getErrorStream();
+		if (err != null) {
+		    errThread = new HandlerThread(errHandler, "stderr reader", sys.getLogger());
+		    errThread.start(new SimpleReader(err));
+		}
+		return new OutputLineIterator(p, errThread, timeout);
 	    }
 	}
     }
@@ -501,15 +600,33 @@ public class SafeCLI {
      * @since 1.0
      */
     public static final ExecData execData(String cmd, String[] env, String dir, IComputerSystem sys, long readTimeout) throws IOException {
+	BufferHandler out = new BufferHandler(sys, true);
+	BufferHandler err = new BufferHandler(sys, true);
+	SafeCLI cli = new SafeCLI(cmd, env, dir, sys, readTimeout);
+	cli.exec(out, err);
+	ExecData result = cli.getResult();
+	result.dataBuff = out.getBuffer();
+	result.errBuff = err.getBuffer();
+	return result;
+    }
+
+    /**
+     * Run a command and get the resulting ChunkedExecData, using the specified environment and start directory. The output
+     * is filtered for characters that are illegal in XML, as with execData.
+     *
+     * @param readTimeout Specifies the maximum amount of time the command should go without producing any character output.
+     *
+     * @since 1.7
+     */
+    public static final ChunkedExecData execDataChunked(String cmd, String[] env, String dir, IComputerSystem sys, long readTimeout)
+		throws IOException {
+
 	int maxLen = sys.getProperties().getIntProperty(IComputerSystem.PROP_PROCESS_MAXBUFFLEN);
 	BufferHandler out = new BufferHandler(maxLen, true);
 	BufferHandler err = new BufferHandler(maxLen, true);
 	SafeCLI cli = new SafeCLI(cmd, env, dir, sys, readTimeout);
 	cli.exec(out, err);
-	ExecData result = cli.getResult();
-	result.data = out.getData();
-	result.err = err.getData();
-	return result;
+	return new ChunkedExecData(cli.getResult(), out.getBuffer().getMemoryBuffer(), err.getBuffer().getMemoryBuffer());
     }
 
     /**
@@ -520,14 +637,13 @@ public class SafeCLI {
      * @since 1.6.10
      */
     public static final ExecData execDataRaw(String cmd, String[] env, String dir, IComputerSystem sys, long readTimeout) throws IOException {
-	int maxLen = sys.getProperties().getIntProperty(IComputerSystem.PROP_PROCESS_MAXBUFFLEN);
-	BufferHandler out = new BufferHandler(maxLen, false);
-	BufferHandler err = new BufferHandler(maxLen, false);
+	BufferHandler out = new BufferHandler(sys, false);
+	BufferHandler err = new BufferHandler(sys, false);
 	SafeCLI cli = new SafeCLI(cmd, env, dir, sys, readTimeout);
 	cli.exec(out, err);
 	ExecData result = cli.getResult();
-	result.data = out.getData();
-	result.err = err.getData();
+	result.dataBuff = out.getBuffer();
+	result.errBuff = err.getBuffer();
 	return result;
     }
 
@@ -545,16 +661,86 @@ public class SafeCLI {
 	new SafeCLI(cmd, env, dir, sys, readTimeout).exec(out, err);
     }
 
+    /**
+     * Run a batch of commands, and get the resulting ExecData for each one, using the specified environment.
+     *
+     * @param readTimeout Specifies the maximum amount of time any command should go without producing any character output.
+     *
+     * @see #execBatch(List, String[], IComputerSystem, long)
+     * @since 1.7
+     */
+    public static final List<ExecData> execBatch(List<String> cmds, String[] env, IComputerSystem sys, Timeout readTimeout)
+		throws IOException {
+
+	return execBatch(cmds, env, sys, sys.getTimeout(readTimeout));
+    }
+
+    /**
+     * Run a batch of commands, and get the resulting ExecData for each one, using the specified environment.
+     *
+     * On a Unix system, the commands are run in sequence by a single process (each in its own subshell), and their outputs
+     * are separated using unique sentinel lines, so that the cost of creating a process is paid once for the whole batch
+     * rather than once per command. If the process hangs (i.e., some command goes without producing output for longer than
+     * readTimeout), the results of the commands that completed are kept, and the remaining commands (starting with the one
+     * that hung) are run in a new batch. If the first command of a batch hangs, it is run on its own, using the session's
+     * configured number of retries. The batch is run by /bin/sh, whatever the login shell; if even its first command does
+     * not start, the remaining commands are run one at a time. On other types of system, the commands are simply run one
+     * at a time.
+     *
+     * @param readTimeout Specifies the maximum amount of time any command should go without producing any character output.
+     *
+     * @return a list of results, in the same order as cmds
+     *
+     * @since 1.7
+     */
+    public static final List<ExecData> execBatch(List<String> cmds, String[] env, IComputerSystem sys, long readTimeout)
+		throws IOException {
+
+	ExecData[] results = new ExecData[cmds.size()];
+	boolean batching = sys.getType() == IComputerSystem.Type.UNIX;
+	int next = 0;
+	while (next < results.length) {
+	    if (!batching || next == results.length - 1) {
+		results[next] = execData(cmds.get(next), env, null, sys, readTimeout);
+		next++;
+	    } else {
+		Batch batch = new Batch(cmds, next, env, sys, readTimeout);
+		int completed = batch.exec(results);
+		if (completed == 0) {
+		    if (!batch.started()) {
+			//
+			// The batch script could not be run at all, so run the remaining commands one at a time
+			//
+			batching = false;
+		    }
+		    //
+		    // The first command in the batch hung (or never started), so run it individually
+		    //
+		    results[next] = execData(cmds.get(next), env, null, sys, readTimeout);
+		    next++;
+		} else {
+		    next += completed;
+		}
+	    }
+	}
+	return Arrays.<ExecData>asList(results);
+    }
+
     /**
      * A container for information resulting from the execution of a process.
      *
+     * Since 1.7, output that exceeds the PROP_PROCESS_MAXBUFFLEN limit is spilled to a memory-mapped file in the session
+     * workspace (unless PROP_PROCESS_SPILL is false), so it can be read using getDataStream, getErrorStream and getLines
+     * without being loaded onto the heap.
+     *
      * @since 1.0
      */
     public static class ExecData {
-	private String cmd;
-	private LocLogger logger;
+	String cmd;
+	LocLogger logger;
 	private int exitCode;
 	private byte[] data, err;
+	private SpillBuffer dataBuff, errBuff;
 
 	ExecData(String cmd, LocLogger logger) {
 	    this.cmd = cmd;
@@ -573,24 +759,69 @@ public class SafeCLI {
 	    return exitCode;
 	}
 
+	void setExitCode(int exitCode) {
+	    this.exitCode = exitCode;
+	}
+
 	/**
 	 * Get the raw data collected from the process stdout.
 	 *
+	 * @throws OutOfMemoryError if the output was spilled to disk, and is too large to be copied into an array
+	 *
 	 * @since 1.0
 	 */
 	public byte[] getData() {
+	    if (data == null && dataBuff != null) {
+		data = dataBuff.toByteArray();
+	    }
 	    return data;
 	}
 
 	/**
 	 * Get the raw data collected from the process stderr.
 	 *
+	 * @throws OutOfMemoryError if the output was spilled to disk, and is too large to be copied into an array
+	 *
 	 * @since 1.3
 	 */
 	public byte[] getError() {
+	    if (err == null && errBuff != null) {
+		err = errBuff.toByteArray();
+	    }
 	    return err;
 	}
 
+	/**
+	 * Get the size (in bytes) of the data collected from the process stdout.
+	 *
+	 * @since 1.7
+	 */
+	public long getDataSize() {
+	    if (data == null && dataBuff != null) {
+		return dataBuff.size();
+	    } else {
+		return data == null ? 0L : (long)data.length;
+	    }
+	}
+
+	/**
+	 * Get a stream of the raw data collected from the process stdout, which does not require the data to be copied.
+	 *
+	 * @since 1.7
+	 */
+	public InputStream getDataStream() {
+	    return toStream(data, dataBuff);
+	}
+
+	/**
+	 * Get a stream of the raw data collected from the process stderr, which does not require the data to be copied.
+	 *
+	 * @since 1.7
+	 */
+	public InputStream getErrorStream() {
+	    return toStream(err, errBuff);
+	}
+
 	/**
 	 * Guaranteed to have at least one entry.  Since 1.3.5, if there was nothing printed to stdout, this
 	 * method returns any output printed to stderr.
@@ -598,10 +829,117 @@ public class SafeCLI {
 	 * @since 1.0
 	 */
 	public List<String> getLines() throws IOException {
-	    List<String> lines = toLines(data);
+	    List<String> lines = toLines(getDataStream());
+	    if (lines.size() == 0) {
+		logger.debug(Message.WARNING_MISSING_OUTPUT, cmd, exitCode, getDataSize());
+		InputStream errStream = getErrorStream();
+		if (errStream != null) {
+		    lines = toLines(errStream);
+		    if (lines.size() > 0) {
+			return lines;
+		    }
+		}
+		lines.add("");
+	    }
+	    return lines;
+	}
+
+	// Private
+
+	private List<String> toLines(InputStream in) throws IOException {
+	    return Strings.toList(new LineIterator(in));
+	}
+
+	private InputStream toStream(byte[] buff, SpillBuffer spill) {
+	    if (buff == null && spill != null) {
+		return spill.getInputStream();
+	    } else {
+		return buff == null ? null : new ByteArrayInputStream(buff);
+	    }
+	}
+    }
+
+    /**
+     * An ExecData whose output is held in ChunkedBuffers, which can be scanned in place (line by line, or using ByteBuffer
+     * views) without being copied. The arrays returned by getData and getError are only created if those methods are called.
+     *
+     * @since 1.7
+     */
+    public static class ChunkedExecData extends ExecData {
+	private ChunkedBuffer out, err;
+	private byte[] outBytes, errBytes;
+
+	ChunkedExecData(ExecData result, ChunkedBuffer out, ChunkedBuffer err) {
+	    super(result.cmd, result.logger);
+	    setExitCode(result.getExitCode());
+	    this.out = out;
+	    this.err = err;
+	}
+
+	/**
+	 * Get the buffer containing the data collected from the process stdout.
+	 *
+	 * @since 1.7
+	 */
+	public ChunkedBuffer getDataBuffer() {
+	    return out;
+	}
+
+	/**
+	 * Get the buffer containing the data collected from the process stderr.
+	 *
+	 * @since 1.7
+	 */
+	public ChunkedBuffer getErrorBuffer() {
+	    return err;
+	}
+
+	/**
+	 * Iterate over the lines of output from the process stdout, without materializing them as Strings.
+	 *
+	 * @since 1.7
+	 */
+	public Iterator<CharSequence> lines() {
+	    return out.lines();
+	}
+
+	@Override
+	public byte[] getData() {
+	    if (outBytes == null) {
+		outBytes = out.toByteArray();
+	    }
+	    return outBytes;
+	}
+
+	@Override
+	public byte[] getError() {
+	    if (errBytes == null) {
+		errBytes = err.toByteArray();
+	    }
+	    return errBytes;
+	}
+
+	@Override
+	public long getDataSize() {
+	    return out.size();
+	}
+
+	@Override
+	public InputStream getDataStream() {
+	    return out.getInputStream();
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+	    return err.getInputStream();
+	}
+
+	@Override
+	public List<String> getLines() throws IOException {
+	    List<String> lines = toLines(out);
 	    if (lines.size() == 0) {
-		logger.debug(Message.WARNING_MISSING_OUTPUT, cmd, exitCode, data.length);
-		if (err != null && err.length > 0) {
+		logger.debug(Message.WARNING_MISSING_OUTPUT, cmd, getExitCode(), out.size());
+		if (err.size() > 0) {
 		    lines = toLines(err);
 		    if (lines.size() > 0) {
 			return lines;
@@ -614,14 +952,26 @@ public class SafeCLI {
 
 	// Private
 
-	private List<String> toLines(byte[] buff) throws IOException {
-	    return Strings.toList(new LineIterator(new ByteArrayInputStream(buff)));
+	private static List<String> toLines(ChunkedBuffer buff) throws IOException {
+	    int b0 = buff.size() > 1 ? buff.byteAt(0) & 0xFF : 0;
+	    if (b0 >= 0xEF || (b0 == 0x1F && (buff.byteAt(1) & 0xFF) == 0x8B)) {
+		//
+		// Possibly a BOM or GZIP magic; let the LineIterator sort it out
+		//
+		return Strings.toList(new LineIterator(buff.getInputStream()));
+	    }
+	    List<String> lines = new ArrayList<String>(buff.getLineCount());
+	    Iterator<CharSequence> iter = buff.lines();
+	    while (iter.hasNext()) {
+		lines.add(iter.next().toString());
+	    }
+	    return lines;
 	}
     }
 
     // Private
 
-    private static int counter = 0;
+    private static AtomicInteger counter = new AtomicInteger(0);
 
     private String cmd, dir;
     private String[] env;
@@ -747,14 +1097,34 @@ public class SafeCLI {
      * An IReaderHandler that simply buffers data.
      */
     static class BufferHandler implements IReaderHandler {
-	private ByteArrayOutputStream buff;
+	private SpillBuffer buff;
 	private int maxLen;
-	private boolean xmlEscape;
+	private boolean xmlEscape, spill;
 
+	/**
+	 * Create a handler that holds up to maxLen bytes in memory, and throws a TruncatedIOException if there is more data.
+	 */
 	BufferHandler(int maxLen, boolean xmlEscape) {
-	    buff = new ByteArrayOutputStream();
+	    buff = new SpillBuffer();
 	    this.maxLen = maxLen;
 	    this.xmlEscape = xmlEscape;
+	    spill = false;
+	}
+
+	/**
+	 * Create a handler that holds up to the system's PROP_PROCESS_MAXBUFFLEN bytes in memory, and then (unless the
+	 * system's PROP_PROCESS_SPILL property is false) spills to a temporary file in the system's workspace.
+	 */
+	BufferHandler(IComputerSystem sys, boolean xmlEscape) {
+	    IProperty props = sys.getProperties();
+	    maxLen = props.getIntProperty(IComputerSystem.PROP_PROCESS_MAXBUFFLEN);
+	    this.xmlEscape = xmlEscape;
+	    spill = !"false".equalsIgnoreCase(props.getProperty(IComputerSystem.PROP_PROCESS_SPILL));
+	    if (spill) {
+		buff = new SpillBuffer(maxLen, sys.getWorkspace());
+	    } else {
+		buff = new SpillBuffer();
+	    }
 	}
 
 	byte[] getData() {
@@ -765,9 +1135,232 @@ public class SafeCLI {
 	    }
 	}
 
+	SpillBuffer getBuffer() {
+	    return buff;
+	}
+
 	public void handle(IReader reader) throws IOException {
-	    InputStream trunc = new TruncatedInputStream(reader.getStream(), maxLen);
-	    Streams.copy(xmlEscape ? XMLFilterStream.filterStream(trunc, true) : trunc, buff, true);
+	    buff.reset(); // in case of a retry
+	    InputStream in = reader.getStream();
+	    if (!spill) {
+		in = new TruncatedInputStream(in, maxLen);
+	    }
+	    Streams.copy(xmlEscape ? XMLFilterStream.filterStream(in, true) : in, buff, true);
+	    buff.close();
+	}
+    }
+
+    /**
+     * A group of commands that are run by a single process. The output of each command is delimited by sentinel lines
+     * containing a random token, which are used to split the output back into individual results:
+     *
+     *   stdout: "TOKEN O n" LF data LF "TOKEN o n exitCode" LF
+     *   stderr: "TOKEN E n" LF data LF "TOKEN e n" LF
+     *
+     * When the process has no separate stderr stream (e.g., because a pseudo-terminal is in use), the stderr sentinels are
+     * interleaved with the stdout, and they are discarded.
+     */
+    static class Batch {
+	private static final java.util.Random RANDOM = new java.security.SecureRandom();
+
+	private List<String> cmds;
+	private int offset, count;
+	private String[] env;
+	private IComputerSystem sys;
+	private long readTimeout;
+	private String token;
+	private boolean started;
+
+	Batch(List<String> cmds, int offset, String[] env, IComputerSystem sys, long readTimeout) {
+	    this.cmds = cmds;
+	    this.offset = offset;
+	    this.env = env;
+	    this.sys = sys;
+	    this.readTimeout = readTimeout;
+	    token = new StringBuffer("__jsaf_").append(Long.toHexString(RANDOM.nextLong())).append("_").toString();
+	}
+
+	/**
+	 * Run the batch, and store the results of the commands that completed.
+	 *
+	 * @return the number of commands (from the offset) whose results were stored
+	 */
+	int exec(ExecData[] results) throws IOException {
+	    String cmd = buildCommand();
+	    int maxLen = sys.getProperties().getIntProperty(IComputerSystem.PROP_PROCESS_MAXBUFFLEN);
+	    int batchLen = (int)Math.min((long)Integer.MAX_VALUE - 8, (long)maxLen * count);
+	    BufferHandler out = new BufferHandler(batchLen, false);
+	    BufferHandler err = new BufferHandler(batchLen, false);
+	    SafeCLI cli = new SafeCLI(cmd, env, null, sys, readTimeout);
+	    try {
+		cli.execOnce(out, err, 1);
+	    } catch (IOException e) {
+		//
+		// If the process hung up (in which case, when no retries are configured, execOnce wraps the cause) or produced
+		// more output than can be buffered, keep the results of the commands that completed.
+		//
+		if (!isIncomplete(e) && !isIncomplete(e.getCause())) {
+		    throw e;
+		}
+	    }
+	    byte[] outData = out.getData();
+	    byte[] errData = err.getData();
+	    started = indexOf(outData, sentinel("O", 0, true), 0) != -1;
+	    int completed = 0;
+	    int outPtr = 0, errPtr = 0;
+	    for (int i=0; i < count; i++) {
+		byte[] begin = sentinel("O", i, true);
+		byte[] end = sentinel("o", i, false);
+		int start = indexOf(outData, begin, outPtr);
+		if (start == -1) {
+		    break;
+		}
+		start += begin.length;
+		int stop = indexOf(outData, end, start);
+		if (stop == -1) {
+		    break;
+		}
+		int eol = indexOf(outData, LF, stop + end.length);
+		if (eol == -1) {
+		    break;
+		}
+		byte[] errBegin = sentinel("E", i, true);
+		if (startsWith(outData, errBegin, start)) {
+		    start += errBegin.length;
+		}
+		ExecData result = new ExecData(cmds.get(offset + i), sys.getLogger());
+		try {
+		    result.exitCode = Integer.parseInt(new String(outData, stop + end.length, eol - stop - end.length, Strings.ASCII).trim());
+		} catch (NumberFormatException e) {
+		    break;
+		}
+		result.data = filter(Arrays.copyOfRange(outData, start, stop));
+		outPtr = eol + 1;
+
+		int errStart = indexOf(errData, errBegin, errPtr);
+		int errStop = errStart == -1 ? -1 : indexOf(errData, sentinel("e", i, false), errStart + errBegin.length);
+		if (errStop == -1) {
+		    result.err = new byte[0];
+		} else {
+		    result.err = filter(Arrays.copyOfRange(errData, errStart + errBegin.length, errStop));
+		    errPtr = errStop;
+		}
+		results[offset + i] = result;
+		completed++;
+	    }
+	    return completed;
+	}
+
+	/**
+	 * Returns true if the last run of the batch got as far as starting its first command. If not, the batch script could
+	 * not be run at all.
+	 */
+	boolean started() {
+	    return started;
+	}
+
+	// Private
+
+	private static final byte[] LF = {(byte)'\n'};
+	private static final String SH = "/bin/sh -c ";
+
+	/**
+	 * Returns true if t indicates that the batch process was cut short, rather than that it could not be run.
+	 */
+	private static boolean isIncomplete(Throwable t) {
+	    return t instanceof InterruptedIOException || t instanceof EOFException || t instanceof SocketException ||
+		   t instanceof TruncatedInputStream.TruncatedIOException;
+	}
+
+	/**
+	 * Build a command that will run all the remaining commands (from the offset), so long as it fits within the system's
+	 * maximum command length. The batch script is run by /bin/sh, since the login shell may not be a POSIX shell (e.g.,
+	 * csh), and contains no newlines, which csh cannot quote.
+	 */
+	private String buildCommand() {
+	    int maxLen = sys.maxCommandLength();
+	    StringBuffer sb = new StringBuffer();
+	    int quotedLen = SH.length();
+	    count = 0;
+	    for (int i=offset; i < cmds.size(); i++) {
+		int n = i - offset;
+		StringBuffer part = new StringBuffer();
+		part.append("printf '%s\\n' '").append(token).append("O ").append(n).append("'; ");
+		part.append("printf '%s\\n' '").append(token).append("E ").append(n).append("' 1>&2; ");
+		//
+		// The command is evaluated from a string, so that a trailing comment cannot swallow the closing sentinels
+		//
+		part.append(OPEN).append(" eval ").append(quote(cmds.get(i))).append(" ").append(CLOSE).append("; __jsaf_rc=$?; ");
+		part.append("printf '\\n%s %s\\n' '").append(token).append("o ").append(n).append("' \"$__jsaf_rc\"; ");
+		part.append("printf '\\n%s\\n' '").append(token).append("e ").append(n).append("' 1>&2; ");
+		int partLen = quote(part.toString()).length() - 2;
+		if (count > 0 && maxLen > 0 && quotedLen + partLen > maxLen) {
+		    break;
+		}
+		sb.append(part);
+		quotedLen += partLen;
+		count++;
+	    }
+	    return SH + quote(sb.toString());
+	}
+
+	/**
+	 * Quote a string for a shell (POSIX or csh), as a single word.
+	 */
+	private static String quote(String s) {
+	    return new StringBuffer("'").append(s.replace("'", "'\\''")).append("'").toString();
+	}
+
+	/**
+	 * Get the bytes of a sentinel. A begin sentinel is followed by a LF. An end sentinel is preceded by a LF, and followed
+	 * by a space (stdout, where the exit code follows) or a LF (stderr).
+	 */
+	private byte[] sentinel(String tag, int n, boolean begin) {
+	    StringBuffer sb = new StringBuffer();
+	    if (!begin) {
+		sb.append("\n");
+	    }
+	    sb.append(token).append(tag).append(" ").append(n);
+	    if (!begin && "o".equals(tag)) {
+		sb.append(" ");
+	    } else {
+		sb.append("\n");
+	    }
+	    return sb.toString().getBytes(Strings.ASCII);
+	}
+
+	/**
+	 * Escape characters that are illegal in XML, as execData does.
+	 */
+	private static byte[] filter(byte[] data) throws IOException {
+	    ByteArrayOutputStream buff = new ByteArrayOutputStream(data.length);
+	    Streams.copy(XMLFilterStream.filterStream(new ByteArrayInputStream(data), true), buff, true);
+	    return buff.toByteArray();
+	}
+
+	private static boolean startsWith(byte[] data, byte[] pattern, int from) {
+	    if (from + pattern.length > data.length) {
+		return false;
+	    }
+	    for (int i=0; i < pattern.length; i++) {
+		if (data[from + i] != pattern[i]) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+
+	private static int indexOf(byte[] data, byte[] pattern, int from) {
+	    if (data == null) {
+		return -1;
+	    }
+	    int last = data.length - pattern.length;
+	    for (int i=from; i <= last; i++) {
+		if (data[i] == pattern[0] && startsWith(data, pattern, i)) {
+		    return i;
+		}
+	    }
+	    return -1;
 	}
     }
 
@@ -783,24 +1376,38 @@ public class SafeCLI {
 	}
     }
 
+    /**
+     * Runs an IReaderHandler in the background, using the shared TaskExecutor.
+     */
     static class HandlerThread implements Runnable {
-	Thread thread;
-	String name;
+	Future<?> future;
+	int id;
+	String label, name = null;
 	IReader reader;
 	IReaderHandler handler;
 	LocLogger logger;
 
-	HandlerThread(IReaderHandler handler, String name, LocLogger logger) {
+	HandlerThread(IReaderHandler handler, String label, LocLogger logger) {
 	    this.handler = handler;
-	    this.name = "ReaderHandler " + counter++ + ": " + name;
+	    this.label = label;
 	    this.logger = logger;
+	    id = counter.getAndIncrement();
+	}
+
+	/**
+	 * Get the name of the handler (which is only built when it is first needed).
+	 */
+	String getName() {
+	    if (name == null) {
+		name = new StringBuilder("ReaderHandler ").append(id).append(": ").append(label).toString();
+	    }
+	    return name;
 	}
 
 	void start(IReader reader) throws IllegalStateException {
-	    if (thread == null || !thread.isAlive()) {
+	    if (future == null || future.isDone()) {
 		this.reader = reader;
-		thread = new Thread(Thread.currentThread().getThreadGroup(), this, name);
-		thread.start();
+		future = TaskExecutor.getInstance().submit(this);
 	    } else {
 		throw new IllegalStateException("running");
 	    }
@@ -813,10 +1420,10 @@ public class SafeCLI {
 	}
 
 	boolean isAlive() {
-	    if (thread == null) {
+	    if (future == null) {
 		return false;
 	    } else {
-		return thread.isAlive();
+		return !future.isDone();
 	    }
 	}
 
@@ -825,21 +1432,35 @@ public class SafeCLI {
 	}
 
 	void join(long millis) throws InterruptedException {
-	    if (thread != null) {
-		thread.join(millis);
+	    if (future != null) {
+		try {
+		    if (millis == 0L) {
+			future.get();
+		    } else {
+			future.get(millis, TimeUnit.MILLISECONDS);
+		    }
+		} catch (ExecutionException e) {
+		    logger.warn(Message.ERROR_EXCEPTION, e.getCause());
+		} catch (TimeoutException e) {
+		}
 	    }
 	}
 
 	// Implement Runnable
 
 	public void run() {
+	    Thread thread = Thread.currentThread();
+	    String threadName = thread.getName();
+	    thread.setName(getName());
 	    try {
 		handler.handle(reader);
 	    } catch (IOException e) {
 		if (!reader.checkClosed()) {
-		    logger.warn(Message.WARNING_READER_THREAD, name, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+		    logger.warn(Message.WARNING_READER_THREAD, getName(), e.getMessage() == null ? e.getClass().getName() : e.getMessage());
 		    logger.warn(Message.ERROR_EXCEPTION, e);
 		}
+	    } finally {
+		thread.setName(threadName);
 	    }
 	}
     }
@@ -894,11 +1515,13 @@ public class SafeCLI {
 
     static class OutputLineIterator implements Iterator<String> {
 	private IProcess p;
+	private HandlerThread errThread;
 	private PerishableReader in;
 	private String line;
 
-	OutputLineIterator(IProcess p, long timeout) throws IOException {
+	OutputLineIterator(IProcess p, HandlerThread errThread, long timeout) throws IOException {
 	    this.p = p;
+	    this.errThread = errThread;
 	    in = PerishableReader.newInstance(p.getInputStream(), timeout);
 	}
 
@@ -910,11 +1533,16 @@ public class SafeCLI {
 		    return false;
 		} else {
 		    try {
-			return (line = in.readLine(Strings.UTF8)) != null;
+			if ((line = in.readLine(Strings.UTF8)) == null) {
+			    finish();
+			    return false;
+			}
+			return true;
 		    } catch (IOException e) {
 			if (p.isRunning()) {
 			    p.destroy();
 			}
+			finish();
 			return false;
 		    }
 		}
@@ -936,5 +1564,20 @@ public class SafeCLI {
 	public void remove() {
 	    throw new UnsupportedOperationException();
 	}
+
+	// Private
+
+	/**
+	 * Wait briefly for the stderr handler to finish, once stdout is exhausted.
+	 */
+	private void finish() {
+	    if (errThread != null) {
+		try {
+		    errThread.join(1000L);
+		} catch (InterruptedException e) {
+		}
+		errThread = null;
+	    }
+	}
     }
 }
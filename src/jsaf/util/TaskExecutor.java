@@ -0,0 +1,359 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jsaf.Message;
+
+/**
+ * The executor used by jSAF to run stream handlers, stream copiers and timed reads in the background.
+ *
+ * By default, tasks are run by a bounded pool of reusable daemon threads. When every pooled thread is busy, a task is handed
+ * to a second (overflow) pool of reusable threads rather than being queued, because stream handlers block for as long as a
+ * process is producing output, and queueing them behind one another could deadlock a process whose stdout and stderr must be
+ * drained together (and a timed read could expire before it even started). For the same reasons, tasks are never queued:
+ * when the overflow pool is also saturated, a task is run in a dedicated thread of its own.
+ *
+ * If the system property jsaf.executor is set to "virtual" and the runtime supports virtual threads, each task is run in a
+ * new virtual thread instead. Any other ExecutorService can be plugged in using setExecutorService.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public final class TaskExecutor {
+    /**
+     * System property specifying the executor backend: "pooled" (the default) or "virtual".
+     *
+     * @since 1.7
+     */
+    public static final String PROP_BACKEND = "jsaf.executor";
+
+    /**
+     * System property specifying the maximum number of threads in the default pool.
+     *
+     * @since 1.7
+     */
+    public static final String PROP_MAX_THREADS = "jsaf.executor.maxThreads";
+
+    /**
+     * System property specifying the maximum number of threads in the overflow pool, which runs tasks when every thread in
+     * the default pool is busy.
+     *
+     * @since 1.7
+     */
+    public static final String PROP_MAX_OVERFLOW_THREADS = "jsaf.executor.maxOverflowThreads";
+
+    private static final TaskExecutor INSTANCE = new TaskExecutor();
+
+    /**
+     * Get the shared instance.
+     *
+     * @since 1.7
+     */
+    public static TaskExecutor getInstance() {
+	return INSTANCE;
+    }
+
+    private volatile ExecutorService service;
+    private boolean virtual = false;
+    private final AtomicInteger active, queued;
+    private final AtomicLong completed;
+    private final Object foregroundLock = new Object();
+    private int foreground = 0;
+    private boolean keeping = false;
+
+    /**
+     * Replace the ExecutorService used to run tasks. Tasks that have already been submitted continue to run on the old
+     * service, which is not shut down.
+     *
+     * @since 1.7
+     */
+    public synchronized void setExecutorService(ExecutorService service) {
+	if (service == null) {
+	    throw new NullPointerException();
+	}
+	this.service = service;
+	virtual = false;
+    }
+
+    /**
+     * Returns true if tasks are being run in virtual threads.
+     *
+     * @since 1.7
+     */
+    public synchronized boolean isVirtual() {
+	return virtual;
+    }
+
+    /**
+     * Run a task in the background.
+     *
+     * @since 1.7
+     */
+    public Future<?> submit(Runnable task) {
+	return execute(new Task<Object>(task, null, false));
+    }
+
+    /**
+     * Run a task in the background.
+     *
+     * @since 1.7
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+	return execute(new Task<T>(null, task, false));
+    }
+
+    /**
+     * Run a task in the background, but (like a task run in a non-daemon thread) prevent the JVM from exiting until it has
+     * finished.
+     *
+     * @since 1.7
+     */
+    public Future<?> submitForeground(Runnable task) {
+	return execute(new Task<Object>(task, null, true));
+    }
+
+    /**
+     * Get the number of tasks that are currently running.
+     *
+     * @since 1.7
+     */
+    public int getActiveCount() {
+	return active.get();
+    }
+
+    /**
+     * Get the number of tasks that have been submitted, but have not yet started running.
+     *
+     * @since 1.7
+     */
+    public int getQueuedCount() {
+	return queued.get();
+    }
+
+    /**
+     * Get the number of tasks that have finished running (normally or otherwise).
+     *
+     * @since 1.7
+     */
+    public long getCompletedCount() {
+	return completed.get();
+    }
+
+    // Private
+
+    private <T> Future<T> execute(Task<T> task) {
+	queued.incrementAndGet();
+	if (task.foreground) {
+	    hold();
+	}
+	try {
+	    service.execute(task);
+	} catch (RejectedExecutionException e) {
+	    if (task.dequeue() && task.foreground) {
+		release();
+	    }
+	    throw e;
+	}
+	return task;
+    }
+
+    /**
+     * Keep the JVM alive, using a non-daemon thread, until release has been called as many times as hold.
+     */
+    private void hold() {
+	synchronized(foregroundLock) {
+	    foreground++;
+	    if (!keeping) {
+		keeping = true;
+		Thread keeper = new Thread(new Runnable() {
+		    public void run() {
+			synchronized(foregroundLock) {
+			    try {
+				while (foreground > 0) {
+				    foregroundLock.wait();
+				}
+			    } catch (InterruptedException e) {
+			    } finally {
+				keeping = false;
+			    }
+			}
+		    }
+		}, "jsaf-task-keeper");
+		keeper.setDaemon(false);
+		keeper.start();
+	    }
+	}
+    }
+
+    private void release() {
+	synchronized(foregroundLock) {
+	    if (--foreground == 0) {
+		foregroundLock.notifyAll();
+	    }
+	}
+    }
+
+    private TaskExecutor() {
+	active = new AtomicInteger(0);
+	queued = new AtomicInteger(0);
+	completed = new AtomicLong(0L);
+	if ("virtual".equalsIgnoreCase(System.getProperty(PROP_BACKEND))) {
+	    try {
+		Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		service = (ExecutorService)method.invoke(null);
+		virtual = true;
+	    } catch (Exception e) {
+		// virtual threads are not supported by this runtime
+		if (Message.getLogger().isDebugEnabled()) {
+		    Message.getLogger().debug(Message.getMessage(Message.ERROR_EXCEPTION), e);
+		}
+	    }
+	}
+	if (service == null) {
+	    int maxThreads = getIntProperty(PROP_MAX_THREADS, 64);
+	    int maxOverflow = getIntProperty(PROP_MAX_OVERFLOW_THREADS, 256);
+	    ThreadFactory factory = new DaemonThreadFactory();
+	    ThreadPoolExecutor overflow = new ThreadPoolExecutor(0, maxOverflow, 60L, TimeUnit.SECONDS,
+								 new SynchronousQueue<Runnable>(), factory, new DedicatedPolicy(factory));
+	    service = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory,
+					     new OverflowPolicy(overflow));
+	}
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+	String s = System.getProperty(name);
+	if (s != null) {
+	    try {
+		return Math.max(1, Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Message.getLogger().warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+	    }
+	}
+	return defaultValue;
+    }
+
+    /**
+     * A Future for a task, which maintains the task counters.
+     */
+    class Task<T> extends FutureTask<T> {
+	private boolean foreground;
+	private AtomicBoolean dequeued;
+
+	Task(final Runnable runnable, final Callable<T> callable, boolean foreground) {
+	    super(new Callable<T>() {
+		public T call() throws Exception {
+		    if (callable == null) {
+			runnable.run();
+			return null;
+		    } else {
+			return callable.call();
+		    }
+		}
+	    });
+	    this.foreground = foreground;
+	    dequeued = new AtomicBoolean(false);
+	}
+
+	@Override
+	public void run() {
+	    if (!dequeue()) {
+		return; // cancelled before it started
+	    }
+	    active.incrementAndGet();
+	    try {
+		super.run();
+	    } finally {
+		active.decrementAndGet();
+		completed.incrementAndGet();
+		if (foreground) {
+		    release();
+		}
+	    }
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+	    boolean cancelled = super.cancel(mayInterruptIfRunning);
+	    if (cancelled && dequeue() && foreground) {
+		release();
+	    }
+	    return cancelled;
+	}
+
+	/**
+	 * Remove the task from the queued count, if this has not already been done.
+	 *
+	 * @return true if the task was still queued
+	 */
+	boolean dequeue() {
+	    if (dequeued.compareAndSet(false, true)) {
+		queued.decrementAndGet();
+		return true;
+	    } else {
+		return false;
+	    }
+	}
+    }
+
+    /**
+     * When the overflow pool is saturated, run the task in a dedicated thread.
+     */
+    static class DedicatedPolicy implements RejectedExecutionHandler {
+	private ThreadFactory factory;
+
+	DedicatedPolicy(ThreadFactory factory) {
+	    this.factory = factory;
+	}
+
+	public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+	    factory.newThread(r).start();
+	}
+    }
+
+    /**
+     * When the pool is saturated, hand the task to the overflow pool.
+     */
+    static class OverflowPolicy implements RejectedExecutionHandler {
+	private ExecutorService overflow;
+
+	OverflowPolicy(ExecutorService overflow) {
+	    this.overflow = overflow;
+	}
+
+	public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+	    overflow.execute(r);
+	}
+    }
+
+    static class DaemonThreadFactory implements ThreadFactory {
+	private final ThreadGroup group;
+	private int counter = 0;
+
+	DaemonThreadFactory() {
+	    group = new ThreadGroup("jSAF Task Thread Group");
+	}
+
+	public synchronized Thread newThread(Runnable r) {
+	    Thread t = new Thread(group, r, new StringBuffer("jsaf-task-").append(Integer.toString(counter++)).toString());
+	    t.setDaemon(true);
+	    return t;
+	}
+    }
+}
@@ -0,0 +1,292 @@
+// Copyright (C) 2022 Arctic Wolf Networks.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jsaf.Message;
+import jsaf.intf.util.IScheduledTask;
+
+/**
+ * A hashed timing wheel for scheduling tasks. Scheduling and cancellation are O(1) operations, which only lock the wheel
+ * bucket in which the task resides. Expired tasks are run by a pool of worker threads, so a slow task cannot delay the
+ * execution of other tasks.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.7
+ */
+public class TimingWheel {
+    private final String name;
+    private final long startTime, tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final AtomicInteger pending;
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * Create a new wheel.
+     *
+     * @param name the name of the wheel's ticker thread
+     * @param tickMillis the resolution of the wheel, in milliseconds
+     * @param wheelSize the number of buckets in the wheel, which will be rounded up to a power of two
+     * @param minWorkers the number of worker threads that will be kept alive when idle
+     */
+    public TimingWheel(String name, long tickMillis, int wheelSize, int minWorkers) {
+	if (tickMillis <= 0 || wheelSize <= 0 || minWorkers < 0) {
+	    throw new IllegalArgumentException();
+	}
+	this.name = name;
+	int size = 1;
+	while (size < wheelSize) {
+	    size <<= 1;
+	}
+	buckets = new Bucket[size];
+	for (int i=0; i < size; i++) {
+	    buckets[i] = new Bucket();
+	}
+	mask = size - 1;
+	pending = new AtomicInteger(0);
+	tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+	workers = new ThreadPoolExecutor(minWorkers, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+					 new SynchronousQueue<Runnable>(), new WorkerThreadFactory());
+	startTime = System.nanoTime();
+	Thread ticker = new Thread(new Ticker(), name);
+	ticker.setDaemon(true);
+	ticker.start();
+    }
+
+    /**
+     * Schedule the task for execution after the specified delay (in milliseconds).
+     */
+    public IScheduledTask schedule(Runnable task, long delay) {
+	return schedule(task, delay, 0L);
+    }
+
+    /**
+     * Schedule the task for repeated fixed-delay execution, beginning after the specified delay. If period is 0, the
+     * task is executed only once.
+     */
+    public IScheduledTask schedule(Runnable task, long delay, long period) {
+	if (task == null) {
+	    throw new NullPointerException();
+	} else if (period < 0) {
+	    throw new IllegalArgumentException(Long.toString(period));
+	}
+	Entry entry = new Entry(task, TimeUnit.MILLISECONDS.toNanos(period));
+	add(entry, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delay)));
+	return entry;
+    }
+
+    /**
+     * Get the number of tasks awaiting execution.
+     */
+    public int size() {
+	return pending.get();
+    }
+
+    /**
+     * Get the number of tasks that are currently being run by worker threads.
+     */
+    public int getActiveCount() {
+	return workers.getActiveCount();
+    }
+
+    // Private
+
+    private static final int PENDING	= 0;
+    private static final int EXPIRED	= 1;
+    private static final int CANCELLED	= 2;
+
+    /**
+     * Place the entry in the bucket corresponding to its deadline. If the ticker has already passed that point, the entry
+     * is dispatched immediately.
+     */
+    private void add(Entry entry, long deadline) {
+	long ticks = (deadline - startTime + tickNanos - 1) / tickNanos;
+	Bucket bucket = buckets[(int)(ticks & mask)];
+	synchronized(bucket) {
+	    if (entry.state.get() == CANCELLED) {
+		return;
+	    } else if (ticks > bucket.processed) {
+		entry.tick = ticks;
+		bucket.link(entry);
+		return;
+	    }
+	}
+	dispatch(entry);
+    }
+
+    private void dispatch(Entry entry) {
+	try {
+	    workers.execute(entry);
+	} catch (RuntimeException e) {
+	    Message.getLogger().warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+	}
+    }
+
+    class Entry implements IScheduledTask, Runnable {
+	final Runnable task;
+	final long period;
+	final AtomicInteger state;
+	long tick;
+	volatile Bucket bucket;
+	Entry prev, next;
+
+	Entry(Runnable task, long period) {
+	    this.task = task;
+	    this.period = period;
+	    state = new AtomicInteger(PENDING);
+	}
+
+	// Implement IScheduledTask
+
+	public Runnable getTask() {
+	    return task;
+	}
+
+	public boolean cancel() {
+	    if (state.compareAndSet(PENDING, CANCELLED)) {
+		Bucket b = bucket;
+		if (b != null) {
+		    synchronized(b) {
+			if (bucket == b) {
+			    b.unlink(this);
+			}
+		    }
+		}
+		return true;
+	    } else {
+		return false;
+	    }
+	}
+
+	public boolean isCancelled() {
+	    return state.get() == CANCELLED;
+	}
+
+	// Implement Runnable
+
+	public void run() {
+	    if (period == 0) {
+		if (!state.compareAndSet(PENDING, EXPIRED)) {
+		    return;
+		}
+	    } else if (state.get() != PENDING) {
+		return;
+	    }
+	    try {
+		task.run();
+	    } catch (Throwable t) {
+		Message.getLogger().warn(Message.getMessage(Message.ERROR_EXCEPTION), t);
+	    }
+	    if (period > 0 && state.get() == PENDING) {
+		add(this, System.nanoTime() + period);
+	    }
+	}
+    }
+
+    /**
+     * A wheel bucket: a doubly-linked list of entries, guarded by the bucket's own monitor.
+     */
+    class Bucket {
+	Entry head;
+	long processed = -1L;
+
+	void link(Entry entry) {
+	    entry.bucket = this;
+	    entry.prev = null;
+	    entry.next = head;
+	    if (head != null) {
+		head.prev = entry;
+	    }
+	    head = entry;
+	    pending.incrementAndGet();
+	}
+
+	void unlink(Entry entry) {
+	    if (entry.prev == null) {
+		head = entry.next;
+	    } else {
+		entry.prev.next = entry.next;
+	    }
+	    if (entry.next != null) {
+		entry.next.prev = entry.prev;
+	    }
+	    entry.prev = null;
+	    entry.next = null;
+	    entry.bucket = null;
+	    pending.decrementAndGet();
+	}
+
+	/**
+	 * Remove and return all the entries that are due at or before the specified tick.
+	 */
+	List<Entry> expire(long tick) {
+	    List<Entry> expired = null;
+	    processed = tick;
+	    Entry entry = head;
+	    while (entry != null) {
+		Entry next = entry.next;
+		if (entry.tick <= tick) {
+		    unlink(entry);
+		    if (expired == null) {
+			expired = new ArrayList<Entry>();
+		    }
+		    expired.add(entry);
+		}
+		entry = next;
+	    }
+	    return expired;
+	}
+    }
+
+    class Ticker implements Runnable {
+	Ticker() {
+	}
+
+	public void run() {
+	    for (long tick=0; true; tick++) {
+		long sleepNanos = startTime + tick * tickNanos - System.nanoTime();
+		while (sleepNanos > 0) {
+		    try {
+			TimeUnit.NANOSECONDS.sleep(sleepNanos);
+		    } catch (InterruptedException e) {
+			// the wheel cannot be stopped
+		    }
+		    sleepNanos = startTime + tick * tickNanos - System.nanoTime();
+		}
+		Bucket bucket = buckets[(int)(tick & mask)];
+		List<Entry> expired;
+		synchronized(bucket) {
+		    expired = bucket.expire(tick);
+		}
+		if (expired != null) {
+		    for (Entry entry : expired) {
+			dispatch(entry);
+		    }
+		}
+	    }
+	}
+    }
+
+    class WorkerThreadFactory implements ThreadFactory {
+	private int counter = 0;
+
+	WorkerThreadFactory() {
+	}
+
+	public synchronized Thread newThread(Runnable r) {
+	    Thread t = new Thread(r, new StringBuffer(name).append(" Worker ").append(Integer.toString(counter++)).toString());
+	    t.setDaemon(true);
+	    return t;
+	}
+    }
+}